@@ -0,0 +1,39 @@
+package com.example;
+
+import com.example.vera.LatencyHistogram;
+
+/**
+ * A timeout that follows how long something is seen to take: half as long
+ * again as the 95th percentile of the samples, within bounds, and a default
+ * until there are enough samples.
+ */
+class AdaptiveTimeout {
+
+    private static final int MIN_SAMPLES = 5;
+
+    private final LatencyHistogram mSamples = new LatencyHistogram();
+    private final long mDefault;
+    private final long mMin;
+    private final long mMax;
+
+    AdaptiveTimeout(long defaultMillis, long minMillis, long maxMillis) {
+        mDefault = defaultMillis;
+        mMin = minMillis;
+        mMax = maxMillis;
+    }
+
+    void record(long millis) {
+        mSamples.record(millis * 1000);
+    }
+
+    long get() {
+        if (mSamples.getCount() < MIN_SAMPLES) return mDefault;
+        long timeout = mSamples.getPercentile(95) / 1000 * 3 / 2;
+        return Math.max(mMin, Math.min(mMax, timeout));
+    }
+
+    @Override
+    public String toString() {
+        return get() + " ms of " + mSamples;
+    }
+}
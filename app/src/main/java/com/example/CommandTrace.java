@@ -0,0 +1,81 @@
+package com.example;
+
+import com.example.vera.LatencyHistogram;
+
+/**
+ * Where the time goes between the hotword and the reaction to a command.
+ *
+ * Each stage of a command is marked with a monotonic timestamp, and the time
+ * since the stage marked before it goes into a histogram of its own. A
+ * stage is only counted the first time in a command, so with several
+ * devices the dispatch and response stages are those of the first one.
+ * Marking the hotword, or the start of a search that doesn't follow it,
+ * begins the next command.
+ */
+public class CommandTrace {
+
+    public static enum Stage {
+        HOTWORD, SEARCH_START, END_OF_SPEECH, RESULT, RESOLVED, DISPATCHED, RESPONSE, SPEECH
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] mLatencies = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram mTotal = new LatencyHistogram();
+
+    // guarded by this
+    private Stage mLast;
+    private long mLastTime;
+    private long mStartTime;
+
+    public CommandTrace() {
+        for (int i = 0; i < mLatencies.length; i++) {
+            mLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public void mark(Stage stage) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (mLast == null || stage.ordinal() <= mLast.ordinal()) {
+                if (stage != Stage.HOTWORD && (stage != Stage.SEARCH_START || mLast == Stage.HOTWORD)) return;
+                if (mLast != null && mLastTime > mStartTime) {
+                    mTotal.record((mLastTime - mStartTime) / 1000);
+                }
+                mStartTime = now;
+            } else {
+                mLatencies[stage.ordinal()].record((now - mLastTime) / 1000);
+            }
+            mLast = stage;
+            mLastTime = now;
+        }
+    }
+
+    /**
+     * Times from the stage before to the given one.
+     */
+    public LatencyHistogram getLatency(Stage stage) {
+        return mLatencies[stage.ordinal()];
+    }
+
+    /**
+     * Times from the start of a command to its last stage, counted once the
+     * next command begins.
+     */
+    public LatencyHistogram getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Percentiles of every stage that was reached, one per line.
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : STAGES) {
+            LatencyHistogram latency = mLatencies[stage.ordinal()];
+            if (latency.getCount() == 0) continue;
+            sb.append(stage.name().toLowerCase()).append(' ').append(latency).append('\n');
+        }
+        return sb.append("total ").append(mTotal).toString();
+    }
+}
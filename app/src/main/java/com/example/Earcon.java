@@ -0,0 +1,102 @@
+package com.example;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Handler;
+
+/**
+ * Short tone played when a command is about to be listened for.
+ *
+ * The tone is generated once into a static track and replayed from there,
+ * and the listener hears about the end of the playback from the track
+ * itself, so the microphone can be opened as soon as the tone is over.
+ */
+class Earcon implements AudioTrack.OnPlaybackPositionUpdateListener {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FREQUENCY = 880;
+    private static final int DURATION = 150;
+    private static final int FADE = 10;
+
+    // some devices are late with the marker or skip it, don't wait for it forever
+    private static final int MARKER_GRACE = 100;
+
+    private final Handler mHandler;
+    private final AudioTrack mTrack;
+    private final int mFrames;
+    private Runnable mListener;
+
+    private final Runnable mDone = new Runnable() {
+        @Override
+        public void run() {
+            done();
+        }
+    };
+
+    /**
+     * The listener is called on the handler's thread.
+     */
+    Earcon(Handler handler) {
+        mHandler = handler;
+        mFrames = SAMPLE_RATE * DURATION / 1000;
+        short[] samples = new short[mFrames];
+        int fade = SAMPLE_RATE * FADE / 1000;
+        for (int i = 0; i < mFrames; i++) {
+            double gain = Math.min(1.0, Math.min(i, mFrames - 1 - i) / (double) fade);
+            samples[i] = (short) (Short.MAX_VALUE * 0.8 * gain * Math.sin(2 * Math.PI * FREQUENCY * i / SAMPLE_RATE));
+        }
+        mTrack = new AudioTrack(AudioManager.STREAM_MUSIC, SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_16BIT, mFrames * 2, AudioTrack.MODE_STATIC);
+        mTrack.write(samples, 0, mFrames);
+        mTrack.setPlaybackPositionUpdateListener(this, handler);
+    }
+
+    /**
+     * Plays the tone, the listener is called once it's over. A tone that is
+     * still playing is cut short and its listener is never called.
+     */
+    void play(Runnable listener) {
+        cancel();
+        mListener = listener;
+        if (mTrack.getState() != AudioTrack.STATE_INITIALIZED) {
+            mHandler.post(mDone);
+            return;
+        }
+        mTrack.reloadStaticData();
+        mTrack.setNotificationMarkerPosition(mFrames);
+        mTrack.play();
+        mHandler.postDelayed(mDone, DURATION + MARKER_GRACE);
+    }
+
+    void cancel() {
+        mListener = null;
+        mHandler.removeCallbacks(mDone);
+        if (mTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
+            mTrack.stop();
+        }
+    }
+
+    void release() {
+        cancel();
+        mTrack.release();
+    }
+
+    @Override
+    public void onMarkerReached(AudioTrack track) {
+        done();
+    }
+
+    @Override
+    public void onPeriodicNotification(AudioTrack track) {
+    }
+
+    private void done() {
+        mHandler.removeCallbacks(mDone);
+        Runnable listener = mListener;
+        mListener = null;
+        if (listener == null) return;
+        mTrack.stop();
+        listener.run();
+    }
+}
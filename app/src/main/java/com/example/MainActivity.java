@@ -1,15 +1,16 @@
 package com.example;
 
 import android.app.Activity;
+import android.content.res.AssetFileDescriptor;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.media.AudioManager;
-import android.media.ToneGenerator;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
 import android.util.Log;
 import android.view.HapticFeedbackConstants;
@@ -18,24 +19,39 @@ import android.view.View;
 import android.widget.Toast;
 
 import com.example.recognizer.DataFiles;
+import com.example.recognizer.Fsg;
 import com.example.recognizer.Grammar;
+import com.example.recognizer.GrammarStore;
+import com.example.recognizer.ModelInstaller;
 import com.example.recognizer.PhonMapper;
+import com.example.recognizer.PronounCache;
+import com.example.vera.ActionDispatcher;
 import com.example.vera.Controller;
 import com.example.vera.Device;
+import com.example.vera.DeviceStateStore;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import edu.cmu.pocketsphinx.FsgModel;
 import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.LogMath;
 import edu.cmu.pocketsphinx.RecognitionListener;
 import edu.cmu.pocketsphinx.SpeechRecognizer;
 import edu.cmu.pocketsphinx.SpeechRecognizerSetup;
@@ -48,14 +64,58 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
     private static final String COMMAND_SEARCH = "command";
     private static final String KWS_SEARCH = "hotword";
 
+    private static final int PRONOUN_CACHE_SIZE = 2048;
+
+    /**
+     * Commands accepted in one utterance, 0 for any number.
+     */
+    private static final int MAX_COMMANDS = 0;
+
+    /**
+     * Default -lw of the decoder, it's applied to grammars when they are loaded.
+     */
+    private static final float LANGUAGE_WEIGHT = 6.5f;
+
+    private static final long TRACE_LOG_PERIOD = 5 * 60 * 1000;
+
+    /**
+     * Where the activation is, changed on the main thread only: listening for
+     * the hotword, playing the earcon, listening for a command or speaking.
+     */
+    private static enum Activation {
+        HOTWORD, EARCON, COMMAND, SPEECH
+    }
+
     private final Handler mHandler = new Handler();
+    private final CommandTrace mTrace = new CommandTrace();
     private final Queue<String> mSpeechQueue = new LinkedList<String>();
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final ExecutorService mStartup = Executors.newCachedThreadPool();
+    private final Object mSetupLock = new Object();
+    // stamps setups, only the one for the latest names may install its recognizer
+    private volatile int mSetupGeneration;
+
+    // silence before a command is given up on, and the time a command may take to say
+    private final AdaptiveTimeout mSilenceTimeout = new AdaptiveTimeout(3000, 1500, 5000);
+    private final AdaptiveTimeout mCommandTimeout = new AdaptiveTimeout(4000, 2500, 8000);
+
+    private Activation mActivation = Activation.HOTWORD;
+    private long mListenStart;
+    private boolean mInSpeech;
+    private Earcon mEarcon;
 
     private SensorManager mSensorManager;
     private float mSensorMaximum;
     private float mSensorValue;
 
+    private long mCreated;
+    private DataFiles mDataFiles;
+    private Future<File> mModel;
+    private String[] mNames;
+
     private SpeechRecognizer mRecognizer;
+    private LogMath mLogMath;
+    private FsgModel mCommandsFsg;
     private Controller mController;
     private TextToSpeech mTextToSpeech;
     private View mMicView;
@@ -67,23 +127,86 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
         }
     };
 
+    private final Runnable mStartCommandCallback = new Runnable() {
+        @Override
+        public void run() {
+            startCommandSearch();
+        }
+    };
+
+    private final Runnable mLogTraceCallback = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "Command latency\n" + mTrace.dump());
+            post(TRACE_LOG_PERIOD, this);
+        }
+    };
+
     private final TextToSpeech.OnUtteranceCompletedListener mUtteranceCompletedListener = new TextToSpeech.OnUtteranceCompletedListener() {
         @Override
         public void onUtteranceCompleted(String utteranceId) {
             synchronized (mSpeechQueue) {
                 mSpeechQueue.poll();
-                if (mSpeechQueue.isEmpty()) {
+                if (!mSpeechQueue.isEmpty()) return;
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mSpeechQueue) {
+                        if (!mSpeechQueue.isEmpty() || mActivation != Activation.SPEECH) return;
+                    }
+                    mActivation = Activation.HOTWORD;
                     mRecognizer.startListening(KWS_SEARCH);
                 }
-            }
+            });
+        }
+    };
+
+    private final ActionDispatcher.Listener mActionListener = new ActionDispatcher.Listener() {
+        @Override
+        public void onComplete(ActionDispatcher.Action action) {
+            mTrace.mark(CommandTrace.Stage.RESPONSE);
+            Log.d(TAG, "Done " + action);
+        }
+
+        @Override
+        public void onFailure(final ActionDispatcher.Action action, Exception e) {
+            mTrace.mark(CommandTrace.Stage.RESPONSE);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(MainActivity.this, "Can't switch " + action.device.name, Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    };
+
+    private final DeviceStateStore.Listener mStateListener = new DeviceStateStore.Listener() {
+        @Override
+        public void onDivergence(Device device, String expected, String reported) {
+            Log.w(TAG, device.name + " is " + reported + " instead of " + expected);
+        }
+
+        @Override
+        public void onRollback(Device device, String target, String state) {
+            Log.w(TAG, device.name + " stays " + state + " instead of " + target);
         }
     };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreated = SystemClock.elapsedRealtime();
         setContentView(R.layout.activity_main);
+        mEarcon = new Earcon(mHandler);
+        // the model, the controller and the grammar of the last known devices are set up in parallel
+        mDataFiles = new DataFiles(getPackageName(), "ru");
+        installModel();
         setupController();
+        String[] names = loadNames();
+        if (names != null) {
+            setupRecognizer(names);
+        }
         mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
         Sensor sensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
         if (sensor != null) {
@@ -100,6 +223,7 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
                 mTextToSpeech.setOnUtteranceCompletedListener(mUtteranceCompletedListener);
             }
         });
+        post(TRACE_LOG_PERIOD, mLogTraceCallback);
         mMicView = findViewById(R.id.mic);
         mMicView.setOnTouchListener(new View.OnTouchListener() {
             @Override
@@ -120,117 +244,245 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
 
     @Override
     protected void onDestroy() {
+        mHandler.removeCallbacks(mLogTraceCallback);
+        Log.d(TAG, "Command latency\n" + mTrace.dump());
+        mHandler.removeCallbacks(mStopRecognitionCallback);
         if (mRecognizer != null) mRecognizer.cancel();
+        mEarcon.release();
+        Log.d(TAG, "Timeouts silence " + mSilenceTimeout + ", command " + mCommandTimeout);
         mSensorManager.unregisterListener(this);
         mTextToSpeech.shutdown();
+        mExecutor.shutdownNow();
+        mStartup.shutdownNow();
+        if (mController != null) {
+            Log.d(TAG, "Latency sdata " + mController.getLatency("sdata") + ", action " + mController.getLatency("action"));
+            mController.release();
+        }
         super.onDestroy();
     }
 
-    private void setupController() {
-        new AsyncTask<Void, Void, Controller>() {
+    private void installModel() {
+        mModel = mStartup.submit(new Callable<File>() {
             @Override
-            protected Controller doInBackground(Void... params) {
-                Controller controller = new Controller();
-                return controller.initialize() ? controller : null;
+            public File call() throws IOException, InterruptedException {
+                long start = SystemClock.elapsedRealtime();
+                File hmmDir = new File(mDataFiles.getHmm());
+                // the apk changes on every update, and its assets with it
+                String assetsVersion = String.valueOf(new File(getPackageCodePath()).lastModified());
+                new ModelInstaller(getAssets(), "hmm/ru", hmmDir, new File(mDataFiles.getHmmManifest()), assetsVersion)
+                        .install(mExecutor);
+                logPhase("model", start);
+                return hmmDir;
             }
+        });
+    }
 
+    private void setupController() {
+        mStartup.execute(new Runnable() {
             @Override
-            protected void onPostExecute(Controller controller) {
-                mController = controller;
-                if (controller == null) {
-                    Toast.makeText(MainActivity.this, "Controller is not found", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(MainActivity.this, "Controller is found! Please wait...", Toast.LENGTH_SHORT).show();
-                    setupRecognizer();
-                }
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                final Controller controller = new Controller(new File(getFilesDir(), "controller"));
+                final boolean found = controller.initialize();
+                logPhase("controller", start);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onControllerSetup(found ? controller : null);
+                    }
+                });
             }
-        }.execute();
+        });
     }
 
-    private void setupRecognizer() {
-        if (mController == null) return;
+    private void onControllerSetup(Controller controller) {
+        mController = controller;
+        if (controller == null) {
+            Toast.makeText(this, "Controller is not found", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        controller.getStates().addListener(mStateListener);
+        List<Device> devices = controller.getDevices();
+        String[] names = new String[devices.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = devices.get(i).name;
+        }
+        // the grammar from the last known devices may already be listening
+        if (!Arrays.equals(names, mNames)) {
+            Toast.makeText(this, "Controller is found! Please wait...", Toast.LENGTH_SHORT).show();
+            setupRecognizer(names);
+        }
+    }
+
+    /**
+     * Names of the devices found last time, so that the grammar can be built
+     * before the controller is.
+     */
+    private String[] loadNames() {
+        File file = new File(mDataFiles.getDeviceNames());
+        if (!file.exists()) return null;
+        try {
+            List<String> names = FileUtils.readLines(file, "UTF-8");
+            return names.toArray(new String[names.size()]);
+        } catch (IOException e) {
+            Log.e(TAG, "Can't read device names", e);
+            return null;
+        }
+    }
+
+    private void setupRecognizer(final String[] names) {
+        mNames = names;
+        final int generation = ++mSetupGeneration;
         final String hotword = getString(R.string.hotword);
-        new AsyncTask<Void, Void, Exception>() {
+        mStartup.execute(new Runnable() {
             @Override
-            protected Exception doInBackground(Void... params) {
-                try {
-                    List<Device> devices = mController.getDevices();
-                    final String[] names = new String[devices.size()];
-                    for (int i = 0; i < names.length; i++) {
-                        names[i] = devices.get(i).name;
+            public void run() {
+                // setups run one at a time in no particular order, those for older names are skipped
+                synchronized (mSetupLock) {
+                    if (generation != mSetupGeneration) return;
+                    try {
+                        setupRecognizer(names, hotword, generation);
+                    } catch (final Exception e) {
+                        if (generation != mSetupGeneration) return;
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onRecognizerSetupError(e);
+                            }
+                        });
                     }
-                    PhonMapper phonMapper = new PhonMapper(getAssets().open("dict/ru/hotwords"));
-                    Grammar grammar = new Grammar(names, phonMapper);
-                    grammar.addWords(hotword);
-                    DataFiles dataFiles = new DataFiles(getPackageName(), "ru");
-                    File hmmDir = new File(dataFiles.getHmm());
-                    File dict = new File(dataFiles.getDict());
-                    File jsgf = new File(dataFiles.getJsgf());
-                    copyAssets(hmmDir);
-                    saveFile(jsgf, grammar.getJsgf());
-                    saveFile(dict, grammar.getDict());
-                    mRecognizer = SpeechRecognizerSetup.defaultSetup()
-                            .setAcousticModel(hmmDir)
-                            .setDictionary(dict)
-                            .setBoolean("-remove_noise", false)
-                            .setKeywordThreshold(1e-7f)
-                            .getRecognizer();
-                    mRecognizer.addKeyphraseSearch(KWS_SEARCH, hotword);
-                    mRecognizer.addGrammarSearch(COMMAND_SEARCH, jsgf);
-                } catch (IOException e) {
-                    return e;
                 }
-                return null;
             }
+        });
+    }
 
-            @Override
-            protected void onPostExecute(Exception ex) {
-                if (ex != null) {
-                    onRecognizerSetupError(ex);
-                } else {
-                    onRecognizerSetupComplete();
+    private void setupRecognizer(String[] names, String hotword, final int generation) throws IOException, InterruptedException {
+        long start = SystemClock.elapsedRealtime();
+        PhonMapper phonMapper = new PhonMapper(mapAsset("dict/ru/hotwords.lex"));
+        GrammarStore store = new GrammarStore(new File(mDataFiles.getGrammarsDir()));
+        String key = GrammarStore.key(names, new String[]{hotword}, phonMapper.getVersion(), MAX_COMMANDS);
+        if (!store.contains(key)) {
+            PronounCache cache = new PronounCache(new File(mDataFiles.getPronounCache()),
+                    PhonMapper.getRulesVersion(), PRONOUN_CACHE_SIZE);
+            cache.load();
+            phonMapper.setCache(cache);
+            GrammarStore.Edit edit = store.edit(key);
+            Grammar grammar;
+            boolean committed = false;
+            try {
+                grammar = new Grammar(names, phonMapper, edit.getDict(), mExecutor);
+                grammar.setMaxCommands(MAX_COMMANDS);
+                grammar.addWords(hotword);
+                edit.commit(grammar.getFsg());
+                committed = true;
+            } finally {
+                if (!committed) {
+                    edit.abort();
                 }
             }
-        }.execute();
+            cache.save();
+            Fsg fsg = grammar.getFsg();
+            Log.d(TAG, "Command grammar " + fsg.getStates() + " states, " + fsg.getArcs() + " arcs");
+            Log.d(TAG, "Pronoun cache " + cache);
+        }
+        logPhase("grammar", start);
+        if (generation != mSetupGeneration) return;
+
+        File hmmDir;
+        try {
+            hmmDir = mModel.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        start = SystemClock.elapsedRealtime();
+        final SpeechRecognizer recognizer = SpeechRecognizerSetup.defaultSetup()
+                .setAcousticModel(hmmDir)
+                .setDictionary(store.getDict(key))
+                .setBoolean("-remove_noise", false)
+                .setKeywordThreshold(1e-7f)
+                .getRecognizer();
+        recognizer.addKeyphraseSearch(KWS_SEARCH, hotword);
+        logPhase("recognizer", start);
+
+        start = SystemClock.elapsedRealtime();
+        // the model keeps a pointer to the log math, so both live as long as the recognizer
+        final LogMath logMath = new LogMath();
+        final FsgModel fsg = new FsgModel(store.getFsg(key).getPath(), logMath, LANGUAGE_WEIGHT);
+        recognizer.addFsgSearch(COMMAND_SEARCH, fsg);
+        logPhase("search for " + names.length + " devices", start);
+        if (generation != mSetupGeneration) return;
+
+        FileUtils.writeLines(new File(mDataFiles.getDeviceNames()), "UTF-8", Arrays.asList(names));
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onRecognizerSetupComplete(generation, recognizer, logMath, fsg);
+            }
+        });
     }
 
-    private void onRecognizerSetupComplete() {
+    private void onRecognizerSetupComplete(int generation, SpeechRecognizer recognizer, LogMath logMath, FsgModel fsg) {
+        // names changed while it was posted, the setup for them is on its way
+        if (generation != mSetupGeneration) {
+            Log.d(TAG, "Dropped recognizer for stale names");
+            return;
+        }
+        if (mRecognizer != null) {
+            mRecognizer.removeListener(this);
+            mRecognizer.cancel();
+        }
+        mRecognizer = recognizer;
+        mLogMath = logMath;
+        mCommandsFsg = fsg;
+        mEarcon.cancel();
+        mHandler.removeCallbacks(mStopRecognitionCallback);
+        mMicView.setBackgroundResource(R.drawable.background_big_mic);
+        mActivation = Activation.HOTWORD;
         Toast.makeText(this, "Ready", Toast.LENGTH_SHORT).show();
         mRecognizer.addListener(this);
         mRecognizer.startListening(KWS_SEARCH);
+        logPhase("ready", mCreated);
     }
 
-    private void onRecognizerSetupError(Exception ex) {
-        Toast.makeText(this, ex.getMessage(), Toast.LENGTH_LONG).show();
+    private void logPhase(String phase, long start) {
+        long now = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Startup " + phase + " took " + (now - start) + " ms, " + (now - mCreated) + " ms since start");
     }
 
-    private void copyAssets(File baseDir) throws IOException {
-        String[] files = getAssets().list("hmm/ru");
-
-        for (String fromFile : files) {
-            File toFile = new File(baseDir.getAbsolutePath() + "/" + fromFile);
-            InputStream in = getAssets().open("hmm/ru/" + fromFile);
-            FileUtils.copyInputStreamToFile(in, toFile);
-        }
+    private void onRecognizerSetupError(Exception ex) {
+        Toast.makeText(this, ex.getMessage(), Toast.LENGTH_LONG).show();
     }
 
-    private void saveFile(File f, String content) throws IOException {
-        File dir = f.getParentFile();
-        if (!dir.exists() && !dir.mkdirs()) {
-            throw new IOException("Cannot create directory: " + dir);
+    private ByteBuffer mapAsset(String path) throws IOException {
+        AssetFileDescriptor fd = getAssets().openFd(path);
+        FileChannel channel = fd.createInputStream().getChannel();
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+        } finally {
+            channel.close();
+            fd.close();
         }
-        FileUtils.writeStringToFile(f, content, "UTF8");
     }
 
     @Override
     public void onBeginningOfSpeech() {
         Log.d(TAG, "onBeginningOfSpeech");
+        if (mActivation == Activation.COMMAND && !mInSpeech) {
+            mInSpeech = true;
+            mSilenceTimeout.record(SystemClock.elapsedRealtime() - mListenStart);
+        }
     }
 
     @Override
     public void onEndOfSpeech() {
         Log.d(TAG, "onEndOfSpeech");
-        if (mRecognizer.getSearchName().equals(COMMAND_SEARCH)) {
+        if (mActivation == Activation.COMMAND) {
+            mTrace.mark(CommandTrace.Stage.END_OF_SPEECH);
+            // the silence timeout ends the search this way too, it says nothing of how long commands take
+            if (mInSpeech) {
+                mCommandTimeout.record(SystemClock.elapsedRealtime() - mListenStart);
+            }
             mRecognizer.stop();
         }
     }
@@ -239,7 +491,8 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
     public void onPartialResult(Hypothesis hypothesis) {
         if (hypothesis == null) return;
         String text = hypothesis.getHypstr();
-        if (KWS_SEARCH.equals(mRecognizer.getSearchName())) {
+        if (mActivation == Activation.HOTWORD && KWS_SEARCH.equals(mRecognizer.getSearchName())) {
+            mTrace.mark(CommandTrace.Stage.HOTWORD);
             startRecognition();
         } else {
             Log.d(TAG, text);
@@ -248,45 +501,65 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
 
     @Override
     public void onResult(Hypothesis hypothesis) {
-        mMicView.setBackgroundResource(R.drawable.background_big_mic);
-        mHandler.removeCallbacks(mStopRecognitionCallback);
         String text = hypothesis != null ? hypothesis.getHypstr() : null;
+        if (COMMAND_SEARCH.equals(mRecognizer.getSearchName())) {
+            mTrace.mark(CommandTrace.Stage.RESULT);
+        }
         Log.d(TAG, "onResult " + text);
+        if (mActivation == Activation.COMMAND) {
+            mHandler.removeCallbacks(mStopRecognitionCallback);
+            mMicView.setBackgroundResource(R.drawable.background_big_mic);
+            mActivation = Activation.HOTWORD;
+            mRecognizer.startListening(KWS_SEARCH);
+        }
         if (text != null) {
             Toast.makeText(this, text, Toast.LENGTH_SHORT).show();
             process(text);
         }
-        if (COMMAND_SEARCH.equals(mRecognizer.getSearchName())) {
-            mRecognizer.startListening(KWS_SEARCH);
-        }
     }
 
     private void startStopRecognition() {
         if (mRecognizer == null) return;
-        if (KWS_SEARCH.equals(mRecognizer.getSearchName())) {
-            startRecognition();
-        } else {
+        if (mActivation == Activation.COMMAND) {
             stopRecognition();
+        } else {
+            startRecognition();
         }
     }
 
-    private synchronized void startRecognition() {
-        if (mRecognizer == null || COMMAND_SEARCH.equals(mRecognizer.getSearchName())) return;
+    /**
+     * Plays the earcon and listens for a command as soon as it's over. The
+     * recognizer is cancelled first so it doesn't hear the earcon, cancel
+     * waits for the decoder to stop.
+     */
+    private void startRecognition() {
+        if (mRecognizer == null || (mActivation != Activation.HOTWORD && mActivation != Activation.SPEECH)) return;
         mRecognizer.cancel();
-        new ToneGenerator(AudioManager.STREAM_MUSIC, ToneGenerator.MAX_VOLUME).startTone(ToneGenerator.TONE_CDMA_PIP, 200);
-        post(400, new Runnable() {
-            @Override
-            public void run() {
-                mMicView.setBackgroundResource(R.drawable.background_big_mic_green);
-                mRecognizer.startListening(COMMAND_SEARCH, 3000);
-                Log.d(TAG, "Listen commands");
-                post(4000, mStopRecognitionCallback);
-            }
-        });
+        mActivation = Activation.EARCON;
+        mEarcon.play(mStartCommandCallback);
     }
 
-    private synchronized void stopRecognition() {
-        if (mRecognizer == null || KWS_SEARCH.equals(mRecognizer.getSearchName())) return;
+    private void startCommandSearch() {
+        if (mActivation != Activation.EARCON) return;
+        mActivation = Activation.COMMAND;
+        mInSpeech = false;
+        mMicView.setBackgroundResource(R.drawable.background_big_mic_green);
+        mRecognizer.startListening(COMMAND_SEARCH, (int) mSilenceTimeout.get());
+        mListenStart = SystemClock.elapsedRealtime();
+        mTrace.mark(CommandTrace.Stage.SEARCH_START);
+        Log.d(TAG, "Listen commands");
+        // the recognizer ends the search at the end of speech, this is for speech that doesn't end
+        post(mCommandTimeout.get(), mStopRecognitionCallback);
+    }
+
+    /**
+     * Ends listening for a command, the result comes to onResult. A command
+     * that is still waiting for the earcon goes on, so that a short tap
+     * still starts one.
+     */
+    private void stopRecognition() {
+        if (mActivation != Activation.COMMAND) return;
+        mHandler.removeCallbacks(mStopRecognitionCallback);
         mRecognizer.stop();
         mMicView.setBackgroundResource(R.drawable.background_big_mic);
     }
@@ -296,6 +569,7 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
         if (mRecognizer == null) return;
         mSensorValue = event.values[0];
         if (mSensorValue < mSensorMaximum) {
+            // a hand held over the sensor, not one passing by
             post(500, new Runnable() {
                 @Override
                 public void run() {
@@ -304,7 +578,7 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
                     }
                 }
             });
-        } else if (COMMAND_SEARCH.equals(mRecognizer.getSearchName())) {
+        } else {
             stopRecognition();
         }
     }
@@ -318,17 +592,22 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
     }
 
     private void process(final String text) {
+        if (mController == null) return;
         new AsyncTask<String, Void, List<Device>>() {
             @Override
             protected List<Device> doInBackground(String... params) {
-                return mController.getDevices(params[0]);
+                List<Device> devices = mController.getDevices(params[0]);
+                mTrace.mark(CommandTrace.Stage.RESOLVED);
+                return devices;
             }
 
             @Override
             protected void onPostExecute(List<Device> devices) {
                 for (Device device : devices) {
-                    String result = mController.process(device);
-                    if (result != null) {
+                    String result = mController.process(device, mActionListener);
+                    if (result == null) {
+                        mTrace.mark(CommandTrace.Stage.DISPATCHED);
+                    } else {
                         Toast.makeText(MainActivity.this, result, Toast.LENGTH_SHORT).show();
                         speak(result);
                     }
@@ -338,6 +617,11 @@ public class MainActivity extends Activity implements RecognitionListener, Senso
     }
 
     private void speak(String text) {
+        mTrace.mark(CommandTrace.Stage.SPEECH);
+        if (mActivation == Activation.EARCON) mEarcon.cancel();
+        mHandler.removeCallbacks(mStopRecognitionCallback);
+        mMicView.setBackgroundResource(R.drawable.background_big_mic);
+        mActivation = Activation.SPEECH;
         synchronized (mSpeechQueue) {
             mRecognizer.stop();
             mSpeechQueue.add(text);
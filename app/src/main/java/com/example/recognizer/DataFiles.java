@@ -30,8 +30,12 @@ public class DataFiles {
 	private final int mSampleRateInHz;
 
 	private final File mFileHmm;
+	private final File mFileHmmManifest;
 	private final File mFileJsgf;
 	private final File mFileDict;
+	private final File mFilePronounCache;
+	private final File mDirGrammars;
+	private final File mFileDeviceNames;
 	private final File mFileLog;
 	private final File mDirRawLog;
 
@@ -43,8 +47,12 @@ public class DataFiles {
         String baseDirAsString = Environment.getExternalStorageDirectory().getAbsolutePath() + "/Android/data/" + packageName + "/" + lang + "/" + VERSION;
 
         mFileHmm = new File(baseDirAsString +"/hmm/" + sampleRate);
+        mFileHmmManifest = new File(baseDirAsString + "/hmm/" + sampleRate + ".manifest");
         mFileJsgf = new File(baseDirAsString + "/lm/" + "lm.jsgf");
         mFileDict = new File(baseDirAsString + "/lm/" + "lm.dic");
+        mFilePronounCache = new File(baseDirAsString + "/lm/" + "pronoun.cache");
+        mDirGrammars = new File(baseDirAsString + "/lm/grammars/");
+        mFileDeviceNames = new File(baseDirAsString + "/lm/" + "devices.txt");
         mFileLog = new File(baseDirAsString + "/pocketsphinx.log");
         mDirRawLog = new File(baseDirAsString + "/raw/");
         mSampleRateInHz = sampleRate;
@@ -94,10 +102,26 @@ public class DataFiles {
 		return mFileHmm.getAbsolutePath();
 	}
 
+	public String getHmmManifest() {
+		return mFileHmmManifest.getAbsolutePath();
+	}
+
 	public String getDict() {
 		return mFileDict.getAbsolutePath();
 	}
 
+	public String getPronounCache() {
+		return mFilePronounCache.getAbsolutePath();
+	}
+
+	public String getGrammarsDir() {
+		return mDirGrammars.getAbsolutePath();
+	}
+
+	public String getDeviceNames() {
+		return mFileDeviceNames.getAbsolutePath();
+	}
+
 	public String getJsgf() {
 		return mFileJsgf.getAbsolutePath();
 	}
@@ -0,0 +1,269 @@
+package com.example.recognizer;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Extracts an acoustic model from assets to a directory the decoder can read.
+ *
+ * Installed files are listed in a manifest with their sizes and checksums,
+ * written for a given version of the assets. While the version is the same a
+ * start only checks that the listed files are still there with the right
+ * sizes. After an update every asset is checksummed and only the files that
+ * differ from the manifest are copied again, several at a time.
+ */
+public class ModelInstaller {
+
+    private static final String TAG = "ModelInstaller";
+
+    private static final String HEADER = "#version ";
+    private static final String TMP = ".tmp";
+
+    private static final long CHUNK = 64 * 1024;
+
+    private final AssetManager mAssets;
+    private final String mAssetDir;
+    private final File mDir;
+    private final File mManifest;
+    private final String mVersion;
+
+    public ModelInstaller(AssetManager assets, String assetDir, File dir, File manifest, String version) {
+        mAssets = assets;
+        mAssetDir = assetDir;
+        mDir = dir;
+        mManifest = manifest;
+        mVersion = version;
+    }
+
+    /**
+     * Returns true if the model was installed by the manifest of the current
+     * version and none of its files are missing or truncated.
+     */
+    public boolean isInstalled() {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        if (!load(entries)) return false;
+        for (Entry entry : entries.values()) {
+            if (new File(mDir, entry.name).length() != entry.size) return false;
+        }
+        return !entries.isEmpty();
+    }
+
+    /**
+     * Copies missing and stale files on the executor. Returns the number of
+     * files copied, which is 0 on a warm start.
+     */
+    public int install(ExecutorService executor) throws IOException, InterruptedException {
+        if (isInstalled()) return 0;
+        final Map<String, Entry> installed = new HashMap<String, Entry>();
+        load(installed);
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            throw new IOException("Cannot create directory: " + mDir);
+        }
+        // files are about to change, so a crash in the middle means a full check
+        if (mManifest.exists() && !mManifest.delete()) {
+            throw new IOException("Cannot delete " + mManifest);
+        }
+        String[] names = mAssets.list(mAssetDir);
+        List<Future<Entry>> futures = new ArrayList<Future<Entry>>(names.length);
+        for (final String name : names) {
+            futures.add(executor.submit(new Callable<Entry>() {
+                @Override
+                public Entry call() throws IOException {
+                    return update(name, installed.get(name));
+                }
+            }));
+        }
+        List<Entry> entries = new ArrayList<Entry>(names.length);
+        int copied = 0;
+        try {
+            for (Future<Entry> future : futures) {
+                Entry entry = future.get();
+                if (entry.copied) copied++;
+                entries.add(entry);
+            }
+        } catch (ExecutionException e) {
+            for (Future<Entry> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+        save(entries);
+        Log.d(TAG, "Copied " + copied + " of " + names.length + " files to " + mDir);
+        return copied;
+    }
+
+    private Entry update(String name, Entry old) throws IOException {
+        Entry entry = checksum(name);
+        File file = new File(mDir, name);
+        if (old == null || old.crc != entry.crc || old.size != entry.size || file.length() != entry.size) {
+            copy(mAssetDir + "/" + name, file);
+            entry.copied = true;
+        }
+        return entry;
+    }
+
+    private Entry checksum(String name) throws IOException {
+        Entry entry = new Entry(name);
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        InputStream in = mAssets.open(mAssetDir + "/" + name);
+        try {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, count);
+                entry.size += count;
+            }
+        } finally {
+            in.close();
+        }
+        entry.crc = crc.getValue();
+        return entry;
+    }
+
+    private void copy(String path, File file) throws IOException {
+        File tmp = new File(file.getPath() + TMP);
+        FileChannel out = new FileOutputStream(tmp).getChannel();
+        try {
+            AssetFileDescriptor fd = openFd(path);
+            if (fd != null) {
+                FileChannel in = fd.createInputStream().getChannel();
+                try {
+                    long position = fd.getStartOffset();
+                    long count = fd.getLength();
+                    while (count > 0) {
+                        long transferred = in.transferTo(position, count, out);
+                        position += transferred;
+                        count -= transferred;
+                    }
+                } finally {
+                    in.close();
+                    fd.close();
+                }
+            } else {
+                ReadableByteChannel in = Channels.newChannel(mAssets.open(path));
+                try {
+                    long position = 0;
+                    long transferred;
+                    while ((transferred = out.transferFrom(in, position, CHUNK)) > 0) {
+                        position += transferred;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    /**
+     * Returns null for compressed assets, which have no file descriptor.
+     */
+    private AssetFileDescriptor openFd(String path) throws IOException {
+        try {
+            return mAssets.openFd(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private boolean load(Map<String, Entry> entries) {
+        if (!mManifest.exists()) return false;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mManifest), "UTF-8"));
+            String line = reader.readLine();
+            boolean current = line != null && line.equals(HEADER + mVersion);
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length != 3) continue;
+                Entry entry = new Entry(fields[0]);
+                entry.size = Long.parseLong(fields[1]);
+                entry.crc = Long.parseLong(fields[2], 16);
+                entries.put(entry.name, entry);
+            }
+            return current;
+        } catch (IOException e) {
+            Log.e(TAG, "Can't read manifest", e);
+            return false;
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Can't read manifest", e);
+            entries.clear();
+            return false;
+        } finally {
+            close(reader);
+        }
+    }
+
+    private void save(List<Entry> entries) throws IOException {
+        File tmp = new File(mManifest.getPath() + TMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            writer.write(HEADER);
+            writer.write(mVersion);
+            writer.write('\n');
+            for (Entry entry : entries) {
+                writer.write(entry.name + " " + entry.size + " " + Long.toHexString(entry.crc) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(mManifest)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + mManifest);
+        }
+    }
+
+    private static void close(BufferedReader reader) {
+        if (reader == null) return;
+        try {
+            reader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Entry {
+
+        final String name;
+        long size;
+        long crc;
+        boolean copied;
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.lexicon;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Compiles a text lexicon ("word  ph ph ph" per line) into the binary table
+ * read by com.example.recognizer.Lexicon.
+ *
+ * Layout, big-endian:
+ * <pre>
+ * int    magic "LEX2"
+ * int    CRC32 of everything after it
+ * short  phone count, then per phone: byte length, UTF-8 bytes
+ * int    entry count
+ * int    restart count, then per restart: int offset of its entry
+ * entries sorted by unsigned UTF-8 bytes of the word:
+ *        byte shared prefix length, byte suffix length, suffix bytes,
+ *        byte phone count, phone ids
+ * </pre>
+ * Every RESTART_INTERVAL-th entry is stored with no shared prefix, so a lookup
+ * does a binary search over restarts and then scans a single block.
+ */
+public class LexiconCompiler {
+
+    public static final int MAGIC = 0x4C455832;
+    public static final int RESTART_INTERVAL = 16;
+
+    private static final Comparator<byte[]> UNSIGNED = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (cmp != 0) return cmp;
+            }
+            return a.length - b.length;
+        }
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: LexiconCompiler <text lexicon> <binary lexicon>");
+            System.exit(1);
+        }
+        compile(new File(args[0]), new File(args[1]));
+    }
+
+    public static void compile(File source, File target) throws IOException {
+        // later lines win, same as when the text file is loaded into a map
+        Map<byte[], String[]> entries = new TreeMap<byte[], String[]>(UNSIGNED);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0) {
+                    String[] data = line.split("  ");
+                    if (data.length < 2) {
+                        throw new IOException("No pronunciation for [" + line + "] in " + source);
+                    }
+                    entries.put(data[0].getBytes("UTF-8"), data[1].split(" "));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        Map<String, Integer> phones = new LinkedHashMap<String, Integer>();
+        for (String[] phons : entries.values()) {
+            for (String phon : phons) {
+                if (!phones.containsKey(phon)) {
+                    phones.put(phon, phones.size());
+                }
+            }
+        }
+        if (phones.size() > 256) {
+            throw new IOException("Too many phones in " + source + ": " + phones.size());
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        List<Integer> restarts = new ArrayList<Integer>();
+        byte[] prev = new byte[0];
+        int index = 0;
+        for (Map.Entry<byte[], String[]> entry : entries.entrySet()) {
+            byte[] word = entry.getKey();
+            String[] phons = entry.getValue();
+            if (word.length > 255 || phons.length > 255) {
+                throw new IOException("Entry is too long: " + new String(word, "UTF-8"));
+            }
+            int shared = 0;
+            if (index % RESTART_INTERVAL == 0) {
+                restarts.add(body.size());
+            } else {
+                int length = Math.min(prev.length, word.length);
+                while (shared < length && prev[shared] == word[shared]) shared++;
+            }
+            body.write(shared);
+            body.write(word.length - shared);
+            body.write(word, shared, word.length - shared);
+            body.write(phons.length);
+            for (String phon : phons) {
+                body.write(phones.get(phon));
+            }
+            prev = word;
+            index++;
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeShort(phones.size());
+        for (String phon : phones.keySet()) {
+            byte[] bytes = phon.getBytes("UTF-8");
+            out.writeByte(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(entries.size());
+        out.writeInt(restarts.size());
+        // the magic and the checksum go before the rest of the header
+        int base = 8 + out.size() + 4 * restarts.size();
+        for (int restart : restarts) {
+            out.writeInt(base + restart);
+        }
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(header.toByteArray());
+        crc.update(body.toByteArray());
+        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        DataOutputStream prefixOut = new DataOutputStream(prefix);
+        prefixOut.writeInt(MAGIC);
+        prefixOut.writeInt((int) crc.getValue());
+        prefixOut.flush();
+
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory: " + dir);
+        }
+        FileOutputStream os = new FileOutputStream(target);
+        try {
+            prefix.writeTo(os);
+            header.writeTo(os);
+            body.writeTo(os);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.recognizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Building the command grammar and dictionary for a set of device names.
+ */
+@State(Scope.Benchmark)
+public class GrammarBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int devices;
+
+    @Param({"300", "3000"})
+    public int vocabulary;
+
+    private final PhonMapper mMapper = new PhonMapper();
+    private String[] mNames;
+    private ExecutorService mExecutor;
+
+    @Setup
+    public void setup() {
+        mNames = Vocabulary.names(devices, vocabulary, 1);
+        mExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public Object inMemory() {
+        Grammar grammar = new Grammar(mNames, mMapper);
+        return grammar.getFsg().toString().length() + grammar.getDict().length();
+    }
+
+    @Benchmark
+    public Object streamed() throws IOException, InterruptedException {
+        Dict dict = new Dict(PhonMapper.getPhoneSet(), new NullChannel());
+        Grammar grammar = new Grammar(mNames, mMapper, dict, mExecutor);
+        dict.close();
+        return grammar.getFsg().toString().length();
+    }
+
+    private static class NullChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
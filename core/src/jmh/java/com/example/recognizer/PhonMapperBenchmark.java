@@ -0,0 +1,44 @@
+package com.example.recognizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Letter-to-phone conversion by the rules, one word per operation.
+ */
+@State(Scope.Thread)
+public class PhonMapperBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int vocabulary;
+
+    private final PhonMapper mMapper = new PhonMapper();
+    private final PhoneBuffer mBuffer = new PhoneBuffer();
+    private String[] mWords;
+    private int mNext;
+
+    @Setup
+    public void setup() {
+        mWords = Vocabulary.words(vocabulary, 1);
+    }
+
+    @Benchmark
+    public PhoneBuffer phones() {
+        mMapper.getPhons(nextWord(), mBuffer);
+        return mBuffer;
+    }
+
+    @Benchmark
+    public String pronoun() {
+        return mMapper.getPronoun(nextWord());
+    }
+
+    private String nextWord() {
+        String word = mWords[mNext];
+        mNext = mNext + 1 < mWords.length ? mNext + 1 : 0;
+        return word;
+    }
+}
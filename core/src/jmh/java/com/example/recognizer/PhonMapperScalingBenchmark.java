@@ -0,0 +1,53 @@
+package com.example.recognizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk transcription of a fixed vocabulary on a pool of the given number of
+ * threads, 0 for one per core. There is no cache, so every operation runs the
+ * rules over every word.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PhonMapperScalingBenchmark {
+
+    private static final int VOCABULARY = 50000;
+
+    @Param({"1", "2", "4", "0"})
+    public int threads;
+
+    private final PhonMapper mMapper = new PhonMapper();
+    private List<String> mWords;
+    private ExecutorService mExecutor;
+
+    @Setup
+    public void setup() {
+        mWords = Arrays.asList(Vocabulary.words(VOCABULARY, 1));
+        mExecutor = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public String[] pronouns() throws InterruptedException {
+        return mMapper.getPronouns(mWords, mExecutor);
+    }
+}
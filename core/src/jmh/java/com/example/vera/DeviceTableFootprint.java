@@ -0,0 +1,152 @@
+package com.example.vera;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Retained heap of a {@link DeviceTable} against the list of devices with a
+ * map of every JSON field the app kept before, both built from the same
+ * sdata response. Each is measured as the used heap after a full GC with the
+ * snapshot held, minus the same without it, taking the largest of several
+ * rounds. Options are given as name=value arguments:
+ * <pre>
+ * devices=1000,2000,5000,10000   sizes to measure
+ * rounds=5                       measurements of each
+ * </pre>
+ * The footprint task runs it with the serial collector, which collects everything on System.gc().
+ */
+public class DeviceTableFootprint {
+
+    private static volatile Object sSink;
+
+    /**
+     * A device the way the app kept it before the table: an object per device
+     * holding the fields of its JSON object in a map.
+     */
+    private static final class LegacyDevice {
+
+        final int id;
+        final String name;
+        final Device.Category category;
+        final Map<String, Object> data = new HashMap<String, Object>();
+
+        LegacyDevice(int id, String name, Device.Category category) {
+            this.id = id;
+            this.name = name;
+            this.category = category;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 0) throw new IllegalArgumentException("Expected name=value but was " + arg);
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+        String devices = options.containsKey("devices") ? options.get("devices") : "1000,2000,5000,10000";
+        int rounds = Integer.parseInt(options.containsKey("rounds") ? options.get("rounds") : "5");
+
+        System.out.println(String.format(Locale.US, "%8s %12s %10s %12s %10s %7s",
+                "devices", "table", "B/device", "objects", "B/device", "ratio"));
+        for (String size : devices.split(",")) {
+            int count = Integer.parseInt(size.trim());
+            final byte[] response = FakeVera.sdata(count);
+            long table = retained(rounds, new Builder() {
+                @Override
+                public Object build() throws Exception {
+                    return table(response);
+                }
+            });
+            long objects = retained(rounds, new Builder() {
+                @Override
+                public Object build() throws Exception {
+                    return objects(response);
+                }
+            });
+            System.out.println(String.format(Locale.US, "%8d %12d %10.1f %12d %10.1f %7.1f",
+                    count, table, (double) table / count, objects, (double) objects / count, (double) objects / table));
+        }
+    }
+
+    private interface Builder {
+        Object build() throws Exception;
+    }
+
+    private static DeviceTable table(byte[] response) throws IOException {
+        Sdata sdata = new SdataParser().parse(new ByteArrayInputStream(response));
+        DeviceTable.Builder builder = new DeviceTable.Builder(0, null);
+        for (Map<String, String> fields : sdata.devices) {
+            builder.put(fields, sdata.categories);
+        }
+        return builder.build();
+    }
+
+    private static List<LegacyDevice> objects(byte[] response) throws IOException, JSONException {
+        JSONObject json = new JSONObject(new String(response, "UTF-8"));
+        Map<Integer, String> categories = new HashMap<Integer, String>();
+        JSONArray array = json.getJSONArray("categories");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject category = array.getJSONObject(i);
+            categories.put(category.getInt("id"), category.getString("name"));
+        }
+        array = json.getJSONArray("devices");
+        List<LegacyDevice> devices = new ArrayList<LegacyDevice>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject object = array.getJSONObject(i);
+            String category = categories.get(object.getInt("category"));
+            if (category == null) continue;
+            LegacyDevice device = new LegacyDevice(object.getInt("id"), object.getString("name").toLowerCase(),
+                    Device.Category.valueOf(category));
+            JSONArray names = object.names();
+            for (int j = 0; j < names.length(); j++) {
+                String name = names.getString(j);
+                device.data.put(name, object.get(name));
+            }
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    private static long retained(int rounds, Builder builder) throws Exception {
+        // the first round also counts what the classes allocate when they are loaded
+        hold(builder);
+        sSink = null;
+        long max = 0;
+        for (int i = 0; i < rounds; i++) {
+            long before = usedHeap();
+            hold(builder);
+            long after = usedHeap();
+            sSink = null;
+            // names are interned and the JVM drops dead ones lazily, so a round
+            // can only start with more than it should, never with less
+            max = Math.max(max, after - before);
+        }
+        return max;
+    }
+
+    private static void hold(Builder builder) throws Exception {
+        sSink = builder.build();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        // a few collections, finalizers and reference queues may free more after the first one
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
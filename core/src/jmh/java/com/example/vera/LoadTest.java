@@ -0,0 +1,285 @@
+package com.example.vera;
+
+import com.example.recognizer.Vocabulary;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+
+/**
+ * Replays recognized commands through the app's {@link Controller} against
+ * a {@link FakeVera}, and reports throughput, latencies and error rates.
+ *
+ * The controller is found through its address cache, loads the devices and
+ * keeps them in sync with delta long-polls over its own pooled transport.
+ * Each command is resolved with {@link Controller#getDevices(String)} and
+ * every device it names goes through {@link Controller#process}, so toggles
+ * come from the optimistic states and are merged per device by the
+ * dispatcher. Options are given as name=value arguments:
+ * <pre>
+ * devices=100       devices of the fake controller
+ * commands=1000     commands to replay
+ * rate=50           commands started per second, 0 for as fast as possible
+ * concurrency=1     threads resolving commands, AsyncTask has one
+ * latency=20        milliseconds the controller takes to answer
+ * jitter=10         up to as many milliseconds more, at random
+ * errors=0.01       share of requests the controller fails
+ * corpus=file       hypotheses to replay, one per line, made up if not given
+ * </pre>
+ */
+public class LoadTest {
+
+    private static final long SETTLE_TIMEOUT = 10000;
+
+    private final Controller mController;
+
+    private final LatencyHistogram mQueue = new LatencyHistogram();
+    private final LatencyHistogram mResolve = new LatencyHistogram();
+    private final LatencyHistogram mAction = new LatencyHistogram();
+    private final LatencyHistogram mCommand = new LatencyHistogram();
+    private final AtomicInteger mActions = new AtomicInteger();
+    private final AtomicInteger mFailedActions = new AtomicInteger();
+    private final AtomicInteger mReadings = new AtomicInteger();
+    private final AtomicInteger mUnresolved = new AtomicInteger();
+    private final AtomicInteger mFailedCommands = new AtomicInteger();
+    private final AtomicInteger mRollbacks = new AtomicInteger();
+    private final AtomicInteger mDivergences = new AtomicInteger();
+
+    public LoadTest(Controller controller) {
+        mController = controller;
+        controller.getStates().addListener(new DeviceStateStore.Listener() {
+            @Override
+            public void onDivergence(Device device, String expected, String reported) {
+                mDivergences.incrementAndGet();
+            }
+
+            @Override
+            public void onRollback(Device device, String target, String state) {
+                mRollbacks.incrementAndGet();
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 0) throw new IllegalArgumentException("Expected name=value but was " + arg);
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+        int devices = Integer.parseInt(option(options, "devices", "100"));
+        int commands = Integer.parseInt(option(options, "commands", "1000"));
+        double rate = Double.parseDouble(option(options, "rate", "50"));
+        int concurrency = Integer.parseInt(option(options, "concurrency", "1"));
+        int latency = Integer.parseInt(option(options, "latency", "20"));
+        int jitter = Integer.parseInt(option(options, "jitter", "10"));
+        double errors = Double.parseDouble(option(options, "errors", "0.01"));
+        String corpus = options.get("corpus");
+        // failures are counted in the report, a stack trace for each would bury it
+        LogManager.getLogManager().reset();
+
+        FakeVera vera = new FakeVera(devices, latency, jitter, errors);
+        vera.start();
+        File cache = File.createTempFile("units", ".txt");
+        Controller controller = null;
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(cache), "UTF-8");
+            try {
+                writer.write("127.0.0.1\n");
+            } finally {
+                writer.close();
+            }
+            controller = new Controller(cache, vera.getPort());
+            long start = System.nanoTime();
+            // the controller fails sdata as often as anything else, the registry retries on its own
+            if (!controller.initialize()) throw new IOException("Can't find the controller");
+            while (controller.getDevices().isEmpty()) {
+                if (System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(SETTLE_TIMEOUT)) throw new IOException("Can't load devices");
+                Thread.sleep(10);
+            }
+            System.out.println("Loaded " + controller.getDevices().size() + " devices in " + (System.nanoTime() - start) / 1000000 + " ms");
+            LoadTest test = new LoadTest(controller);
+            List<String> hypotheses = corpus != null ? read(corpus) : generate(FakeVera.names(devices), commands);
+            long elapsed = test.run(hypotheses, commands, rate, concurrency);
+            int stale = test.settle(vera);
+            System.out.print(test.report(commands, elapsed, concurrency, vera, stale));
+        } finally {
+            if (controller != null) controller.release();
+            vera.stop();
+            cache.delete();
+        }
+    }
+
+    /**
+     * Replays the hypotheses in a loop, returns the nanoseconds it took for
+     * every command to be answered.
+     */
+    public long run(final List<String> hypotheses, int commands, double rate, int concurrency) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        final CountDownLatch done = new CountDownLatch(commands);
+        final long period = rate > 0 ? (long) (1e9 / rate) : 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < commands; i++) {
+            // latencies count from when a command was due, so a backlog isn't hidden by waiting for it
+            final long due = start + i * period;
+            long wait = due - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            final String hypothesis = hypotheses.get(i % hypotheses.size());
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    execute(hypothesis, period > 0 ? due : System.nanoTime(), done);
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    private void execute(String hypothesis, final long due, final CountDownLatch done) {
+        long start = System.nanoTime();
+        mQueue.record((start - due) / 1000);
+        List<Device> devices = mController.getDevices(hypothesis);
+        mResolve.record((System.nanoTime() - start) / 1000);
+        if (devices.isEmpty()) mUnresolved.incrementAndGet();
+        final AtomicInteger remaining = new AtomicInteger(devices.size() + 1);
+        final AtomicInteger failed = new AtomicInteger();
+        for (Device device : devices) {
+            final long sent = System.nanoTime();
+            String reading = mController.process(device, new ActionDispatcher.Listener() {
+                @Override
+                public void onComplete(ActionDispatcher.Action action) {
+                    finish();
+                }
+
+                @Override
+                public void onFailure(ActionDispatcher.Action action, Exception e) {
+                    mFailedActions.incrementAndGet();
+                    failed.incrementAndGet();
+                    finish();
+                }
+
+                private void finish() {
+                    mAction.record((System.nanoTime() - sent) / 1000);
+                    if (remaining.decrementAndGet() == 0) complete(due, failed.get() > 0, done);
+                }
+            });
+            if (device.category.field != null) {
+                // sensors are read from the registry and answered right away
+                mReadings.incrementAndGet();
+                if (reading == null) failed.incrementAndGet();
+                remaining.decrementAndGet();
+            } else {
+                mActions.incrementAndGet();
+            }
+        }
+        if (remaining.decrementAndGet() == 0) complete(due, failed.get() > 0, done);
+    }
+
+    private void complete(long due, boolean failed, CountDownLatch done) {
+        if (failed) mFailedCommands.incrementAndGet();
+        mCommand.record((System.nanoTime() - due) / 1000);
+        done.countDown();
+    }
+
+    /**
+     * Waits for the registry to catch up with the controller, returns the
+     * number of devices whose state still differs from the controller's.
+     */
+    public int settle(FakeVera vera) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT;
+        int stale;
+        do {
+            stale = 0;
+            for (Device device : mController.getDevices()) {
+                if (device.category.field != null) continue;
+                if (!String.valueOf(vera.getStatus(device.id)).equals(mController.getStates().getStatus(device))) stale++;
+            }
+            if (stale > 0) Thread.sleep(50);
+        } while (stale > 0 && System.currentTimeMillis() < deadline);
+        return stale;
+    }
+
+    public String report(int commands, long elapsed, int concurrency, FakeVera vera, int stale) {
+        double seconds = elapsed / 1e9;
+        int actions = mActions.get();
+        int sent = vera.getActions();
+        return String.format(Locale.US, "Commands %d in %.2f s, %.1f/s at concurrency %d%n", commands, seconds, commands / seconds, concurrency)
+                + "queue   " + mQueue + "\n"
+                + "resolve " + mResolve + "\n"
+                + "action  " + mAction + "\n"
+                + "request " + mController.getLatency("action") + "\n"
+                + "command " + mCommand + "\n"
+                + String.format(Locale.US, "Actions %d, sent %d, merged %d, failed %d (%.1f%%), rolled back %d, readings %d%n",
+                actions, sent, actions - sent, mFailedActions.get(), percent(mFailedActions.get(), actions), mRollbacks.get(), mReadings.get())
+                + String.format(Locale.US, "Commands without devices %d (%.1f%%), with failed actions %d (%.1f%%)%n",
+                mUnresolved.get(), percent(mUnresolved.get(), commands), mFailedCommands.get(), percent(mFailedCommands.get(), commands))
+                + String.format(Locale.US, "sdata full %d, deltas %d, divergences %d, devices out of sync once settled %d%n",
+                vera.getFullResponses(), vera.getDeltaResponses(), mDivergences.get(), stale);
+    }
+
+    /**
+     * Commands naming one or two devices, with a few words around them and
+     * some that name nothing.
+     */
+    static List<String> generate(String[] names, int count) {
+        Random random = new Random(1);
+        String[] noise = Vocabulary.words(50, 2);
+        List<String> hypotheses = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                hypotheses.add(noise[random.nextInt(noise.length)] + " " + noise[random.nextInt(noise.length)]);
+            } else if (kind < 4) {
+                hypotheses.add(names[random.nextInt(names.length)] + " " + names[random.nextInt(names.length)]);
+            } else {
+                hypotheses.add(names[random.nextInt(names.length)]);
+            }
+        }
+        return hypotheses;
+    }
+
+    private static List<String> read(String path) throws IOException {
+        List<String> hypotheses = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0) hypotheses.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        if (hypotheses.isEmpty()) throw new IOException("No hypotheses in " + path);
+        return hypotheses;
+    }
+
+    private static double percent(int count, int total) {
+        return total > 0 ? 100.0 * count / total : 0;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.vera;
+
+import com.example.recognizer.Vocabulary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finding device names in a recognized command, and building the matcher
+ * when the devices change.
+ */
+@State(Scope.Thread)
+public class NameMatcherBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int devices;
+
+    private List<Device> mDevices;
+    private NameMatcher mMatcher;
+    private String mCommand;
+
+    @Setup
+    public void setup() {
+        String[] names = Vocabulary.names(devices, Math.max(100, devices / 2), 1);
+        mDevices = new ArrayList<Device>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            mDevices.add(new Device(i, names[i], Device.Category.Switch));
+        }
+        Collections.sort(mDevices);
+        mMatcher = new NameMatcher(mDevices, 0);
+        // a command names a couple of devices among other words
+        mCommand = "включи " + names[names.length / 3] + " и " + names[names.length - 1] + " пожалуйста";
+    }
+
+    @Benchmark
+    public List<Device> match() {
+        return mMatcher.match(mCommand);
+    }
+
+    @Benchmark
+    public NameMatcher build() {
+        return new NameMatcher(mDevices, 0);
+    }
+}
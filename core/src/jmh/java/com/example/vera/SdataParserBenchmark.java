@@ -0,0 +1,90 @@
+package com.example.vera;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reading a full sdata response and building the device table from it, with
+ * the org.json tree the app used to build as the baseline.
+ */
+@State(Scope.Thread)
+public class SdataParserBenchmark {
+
+    @Param({"100", "500", "1000", "10000"})
+    public int devices;
+
+    private final SdataParser mParser = new SdataParser();
+    private byte[] mResponse;
+    private Sdata mSdata;
+
+    @Setup
+    public void setup() throws IOException {
+        mResponse = FakeVera.sdata(devices);
+        mSdata = mParser.parse(new ByteArrayInputStream(mResponse));
+    }
+
+    @Benchmark
+    public Sdata parse() throws IOException {
+        return mParser.parse(new ByteArrayInputStream(mResponse));
+    }
+
+    /**
+     * What the app did before: the whole response as a string, a JSONObject
+     * tree of it and a map of every field of each device.
+     */
+    @Benchmark
+    public List<Map<String, Object>> orgJson() throws IOException, JSONException {
+        Reader reader = new InputStreamReader(new ByteArrayInputStream(mResponse), "UTF-8");
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[4096];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, count);
+        }
+        JSONObject json = new JSONObject(sb.toString());
+        Map<Integer, String> categories = new HashMap<Integer, String>();
+        JSONArray array = json.optJSONArray("categories");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject category = array.getJSONObject(i);
+            categories.put(category.getInt("id"), category.getString("name"));
+        }
+        array = json.optJSONArray("devices");
+        List<Map<String, Object>> devices = new ArrayList<Map<String, Object>>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject object = array.getJSONObject(i);
+            if (categories.get(object.getInt("category")) == null) continue;
+            Map<String, Object> data = new HashMap<String, Object>();
+            JSONArray names = object.names();
+            for (int j = 0; j < names.length(); j++) {
+                String name = names.getString(j);
+                data.put(name, object.get(name));
+            }
+            devices.add(data);
+        }
+        return devices;
+    }
+
+    @Benchmark
+    public DeviceTable table() {
+        DeviceTable.Builder builder = new DeviceTable.Builder(0, null);
+        for (Map<String, String> fields : mSdata.devices) {
+            builder.put(fields, mSdata.categories);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012, Institute of Cybernetics at Tallinn University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.recognizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Pronunciation dictionary, either kept in memory or streamed to a channel.
+ *
+ * A streamed dictionary writes every new word straight away through a
+ * small buffer, so large vocabularies are never held on the heap. Write
+ * errors are kept and thrown by {@link #close()}.
+ */
+public class Dict {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final StringBuilder mDict;
+	private final WordSet mWords = new WordSet();
+	private final PhoneSet mPhoneSet;
+
+	private final WritableByteChannel mChannel;
+	private final StringBuilder mLine;
+	private final CharsetEncoder mEncoder;
+	private final ByteBuffer mBytes;
+	private CharBuffer mChars;
+	private IOException mError;
+
+	private static final String NL = System.getProperty("line.separator");
+
+	public Dict() {
+		this(null);
+	}
+
+	/**
+	 * Phone set is needed to add pronunciations as {@link PhoneBuffer}.
+	 */
+	public Dict(PhoneSet phoneSet) {
+		mPhoneSet = phoneSet;
+		mDict = new StringBuilder();
+		mChannel = null;
+		mLine = null;
+		mEncoder = null;
+		mBytes = null;
+	}
+
+	/**
+	 * Streams the dictionary in UTF-8 to the channel, which is closed by
+	 * {@link #close()}.
+	 */
+	public Dict(PhoneSet phoneSet, WritableByteChannel channel) {
+		mPhoneSet = phoneSet;
+		mDict = null;
+		mChannel = channel;
+		mLine = new StringBuilder();
+		// same replacement as String.getBytes for unpaired surrogates
+		mEncoder = Charset.forName("UTF-8").newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		mBytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		mChars = CharBuffer.allocate(256);
+	}
+
+	public boolean contains(String key) {
+		return mWords.contains(key);
+	}
+
+	public void add(String key, String value) {
+		if (mWords.add(key)) {
+			StringBuilder out = begin();
+			out.append(key);
+			out.append("  "); // two spaces
+			out.append(value);
+			out.append(NL);
+			end();
+		}
+	}
+
+	public void add(String key, PhoneBuffer phons) {
+		if (mWords.add(key)) {
+			StringBuilder out = begin();
+			out.append(key);
+			out.append("  "); // two spaces
+			phons.appendTo(out, mPhoneSet);
+			out.append(NL);
+			end();
+		}
+	}
+
+	public boolean isStreamed() {
+		return mChannel != null;
+	}
+
+	/**
+	 * Writes out buffered entries and closes the channel of a streamed
+	 * dictionary, throwing the first error that happened while writing.
+	 */
+	public void close() throws IOException {
+		if (mChannel == null) return;
+		try {
+			if (mError == null) {
+				flush();
+			}
+		} finally {
+			mChannel.close();
+		}
+		if (mError != null) throw mError;
+	}
+
+	public String toString() {
+		if (mDict == null) {
+			throw new IllegalStateException("Dictionary is streamed");
+		}
+		return mDict.toString();
+	}
+
+	private StringBuilder begin() {
+		if (mDict != null) return mDict;
+		mLine.setLength(0);
+		return mLine;
+	}
+
+	private void end() {
+		if (mDict != null || mError != null) return;
+		int length = mLine.length();
+		if (mChars.capacity() < length) {
+			mChars = CharBuffer.allocate(Math.max(length, mChars.capacity() * 2));
+		}
+		mChars.clear();
+		mLine.getChars(0, length, mChars.array(), 0);
+		mChars.limit(length);
+		try {
+			while (true) {
+				CoderResult result = mEncoder.encode(mChars, mBytes, false);
+				if (!result.isOverflow()) break;
+				flush();
+			}
+		} catch (IOException e) {
+			mError = e;
+		}
+	}
+
+	private void flush() throws IOException {
+		mBytes.flip();
+		while (mBytes.hasRemaining()) {
+			mChannel.write(mBytes);
+		}
+		mBytes.clear();
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package com.example.recognizer;
+
+/**
+ * Finite state grammar in the sphinxbase FSG text format.
+ * State 0 is the start state and state 1 is the final one.
+ */
+public class Fsg {
+
+    private final String mName;
+    private final StringBuilder mTransitions = new StringBuilder();
+    private int mStates = 2;
+    private int mArcs;
+
+    Fsg(String name) {
+        mName = name;
+    }
+
+    int addState() {
+        return mStates++;
+    }
+
+    /**
+     * Adds a transition, a null one if the word is null.
+     */
+    void addTransition(int from, int to, float prob, String word) {
+        mTransitions.append("TRANSITION ").append(from).append(' ').append(to).append(' ').append(prob);
+        if (word != null) {
+            mTransitions.append(' ').append(word);
+        }
+        mTransitions.append('\n');
+        mArcs++;
+    }
+
+    public int getStates() {
+        return mStates;
+    }
+
+    public int getArcs() {
+        return mArcs;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("FSG_BEGIN ").append(mName).append('\n');
+        sb.append("NUM_STATES ").append(mStates).append('\n');
+        sb.append("START_STATE 0\n");
+        sb.append("FINAL_STATE 1\n");
+        sb.append(mTransitions);
+        sb.append("FSG_END\n");
+        return sb.toString();
+    }
+}
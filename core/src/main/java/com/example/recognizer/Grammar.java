@@ -0,0 +1,218 @@
+package com.example.recognizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+public class Grammar {
+
+    private final String[] mCommands;
+    private final String mJsgf;
+    private int mMaxCommands;
+    private Fsg mFsg;
+    private final Dict mDict;
+    private final PhonMapper mPhonMapper;
+    private final PhoneBuffer mPhons = new PhoneBuffer();
+
+    public Grammar(String[] commands, PhonMapper phonMapper) {
+        mDict = new Dict(PhonMapper.getPhoneSet());
+        mPhonMapper = phonMapper;
+        mCommands = commands;
+        mJsgf = jsgf(commands);
+        for (String command : commands) {
+            addWords(command);
+        }
+    }
+
+    /**
+     * Transcribes words of the commands in parallel on the executor.
+     */
+    public Grammar(String[] commands, PhonMapper phonMapper, ExecutorService executor) throws InterruptedException {
+        this(commands, phonMapper, new Dict(PhonMapper.getPhoneSet()), executor);
+    }
+
+    /**
+     * Adds words to the given dictionary, which may be a streamed one.
+     */
+    public Grammar(String[] commands, PhonMapper phonMapper, Dict dict, ExecutorService executor) throws InterruptedException {
+        mDict = dict;
+        mPhonMapper = phonMapper;
+        mCommands = commands;
+        mJsgf = jsgf(commands);
+        addWords(Arrays.asList(commands), executor);
+    }
+
+    private static String jsgf(String[] commands) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#JSGF V1.0;\ngrammar commands;\n");
+        sb.append("public <command> = <commands>+;\n");
+        sb.append("<commands> = ");
+
+        for (int i = 0; i < commands.length; i++) {
+            if (i > 0) sb.append(" | ");
+            sb.append("[").append(commands[i]).append("]");
+        }
+
+        sb.append(";\n");
+        return sb.toString();
+    }
+
+    public String getJsgf() {
+        return mJsgf;
+    }
+
+    /**
+     * Limits how many commands the FSG accepts in one utterance, 0 means any
+     * number like the JSGF grammar does. Grammars stored by key should have
+     * the limit in the key.
+     */
+    public void setMaxCommands(int maxCommands) {
+        mMaxCommands = maxCommands;
+        mFsg = null;
+    }
+
+    /**
+     * Same language as {@link #getJsgf()} (up to the commands limit) as a
+     * finite state grammar, which the decoder loads without compiling.
+     * Commands are factored into a word trie, so the ones starting with the
+     * same words share states and arcs.
+     */
+    public Fsg getFsg() {
+        if (mFsg == null) {
+            mFsg = buildFsg(true);
+        }
+        return mFsg;
+    }
+
+    /**
+     * Grammar with a separate path per command, for comparing sizes.
+     */
+    public Fsg getFlatFsg() {
+        return buildFsg(false);
+    }
+
+    private Fsg buildFsg(boolean factored) {
+        Node root = new Node();
+        for (String command : mCommands) {
+            String[] words = words(command);
+            if (words.length == 0) continue;
+            root.add(words, 0, factored);
+        }
+
+        // hub states between commands: a loop over state 0, or a chain of them
+        Fsg fsg = new Fsg("commands");
+        int layers = mMaxCommands > 0 ? mMaxCommands : 1;
+        int hub = 0;
+        for (int i = 0; i < layers; i++) {
+            int next = mMaxCommands > 0 ? fsg.addState() : 0;
+            float exit = 1f / (root.names + 1);
+            addTransitions(fsg, root, hub, next, root.names + 1);
+            fsg.addTransition(hub, 1, exit, null);
+            hub = next;
+        }
+        if (mMaxCommands > 0) {
+            fsg.addTransition(hub, 1, 1f, null);
+        }
+        return fsg;
+    }
+
+    private static void addTransitions(Fsg fsg, Node node, int from, int hub, int total) {
+        for (Node child : node.children) {
+            float prob = (float) child.names / total;
+            if (child.children.isEmpty()) {
+                fsg.addTransition(from, hub, prob, child.word);
+                continue;
+            }
+            int state = fsg.addState();
+            fsg.addTransition(from, state, prob, child.word);
+            if (child.ends > 0) {
+                fsg.addTransition(state, hub, (float) child.ends / child.names, null);
+            }
+            addTransitions(fsg, child, state, hub, child.names);
+        }
+    }
+
+    /**
+     * Word trie node, counting commands passing through it and ending at it.
+     */
+    private static class Node {
+
+        final String word;
+        final List<Node> children = new ArrayList<Node>();
+        final Map<String, Node> index = new HashMap<String, Node>();
+        int names;
+        int ends;
+
+        Node() {
+            this(null);
+        }
+
+        Node(String word) {
+            this.word = word;
+        }
+
+        void add(String[] words, int pos, boolean factored) {
+            names++;
+            if (pos == words.length) {
+                ends++;
+                return;
+            }
+            Node child = factored ? index.get(words[pos]) : null;
+            if (child == null) {
+                child = new Node(words[pos]);
+                children.add(child);
+                index.put(child.word, child);
+            }
+            child.add(words, pos + 1, factored);
+        }
+    }
+
+    private static String[] words(String command) {
+        List<String> words = new ArrayList<String>();
+        for (String word : command.split(" ")) {
+            if (word.length() > 0) {
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /**
+     * Returns text of the dictionary, unless it's streamed.
+     */
+    public String getDict() {
+        return mDict.toString();
+    }
+
+    public void addWords(String text) {
+        String[] words = text.split(" ");
+        for (String word : words) {
+            if (!mDict.contains(word)) {
+                mPhonMapper.getPhons(word, mPhons);
+                mDict.add(word, mPhons);
+            }
+        }
+    }
+
+    public void addWords(Collection<String> texts, ExecutorService executor) throws InterruptedException {
+        Set<String> words = new LinkedHashSet<String>();
+        for (String text : texts) {
+            for (String word : text.split(" ")) {
+                if (!mDict.contains(word)) {
+                    words.add(word);
+                }
+            }
+        }
+        String[] pronouns = mPhonMapper.getPronouns(words, executor);
+        int i = 0;
+        for (String word : words) {
+            mDict.add(word, pronouns[i++]);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,199 @@
+package com.example.recognizer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compiled grammar and dictionary files addressed by a hash of everything they are
+ * built from, so an unchanged vocabulary is neither transcribed nor written
+ * again.
+ *
+ * Each file is written next to its final name and then renamed, so a crash
+ * never leaves a half-written grammar under a valid key. Only the most
+ * recently used entries are kept.
+ */
+public class GrammarStore {
+
+    private static final String FSG = ".fsg";
+    private static final String DICT = ".dic";
+    private static final String TMP = ".tmp";
+
+    private static final int KEEP = 4;
+
+    /**
+     * Bump when grammars or dictionaries are built or written differently, so
+     * that entries of older builds aren't used.
+     */
+    private static final int FORMAT = 1;
+
+    private final File mDir;
+
+    public GrammarStore(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * Key of a grammar built from the commands with the given limit of
+     * commands per utterance, with the extra words in the dictionary, by a
+     * phone mapper of the given version.
+     */
+    public static String key(String[] commands, String[] words, String version, int maxCommands) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            update(digest, String.valueOf(FORMAT));
+            update(digest, version);
+            update(digest, String.valueOf(maxCommands));
+            for (String command : commands) {
+                update(digest, command);
+            }
+            update(digest, "");
+            for (String word : words) {
+                update(digest, word);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public File getFsg(String key) {
+        return new File(mDir, key + FSG);
+    }
+
+    public File getDict(String key) {
+        return new File(mDir, key + DICT);
+    }
+
+    /**
+     * Returns true if both files of the key are stored and marks them as used.
+     */
+    public boolean contains(String key) {
+        File fsg = getFsg(key);
+        File dict = getDict(key);
+        if (!fsg.exists() || !dict.exists()) return false;
+        long now = System.currentTimeMillis();
+        fsg.setLastModified(now);
+        dict.setLastModified(now);
+        return true;
+    }
+
+    public void save(String key, Grammar grammar) throws IOException {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            throw new IOException("Cannot create directory: " + mDir);
+        }
+        // the grammar goes last, so it's only there when the dictionary is
+        write(getDict(key), grammar.getDict());
+        write(getFsg(key), grammar.getFsg().toString());
+        prune();
+    }
+
+    /**
+     * Starts writing files of the key: the dictionary is streamed while the
+     * grammar is built and the entry appears on {@link Edit#commit(Fsg)}.
+     */
+    public Edit edit(String key) throws IOException {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            throw new IOException("Cannot create directory: " + mDir);
+        }
+        return new Edit(key);
+    }
+
+    public class Edit {
+
+        private final String mKey;
+        private final File mTmp;
+        private final Dict mDict;
+
+        private Edit(String key) throws IOException {
+            mKey = key;
+            mTmp = new File(GrammarStore.this.getDict(key).getPath() + TMP);
+            mDict = new Dict(PhonMapper.getPhoneSet(), new FileOutputStream(mTmp).getChannel());
+        }
+
+        public Dict getDict() {
+            return mDict;
+        }
+
+        public void commit(Fsg fsg) throws IOException {
+            try {
+                mDict.close();
+            } catch (IOException e) {
+                mTmp.delete();
+                throw e;
+            }
+            if (!mTmp.renameTo(GrammarStore.this.getDict(mKey))) {
+                mTmp.delete();
+                throw new IOException("Cannot write " + GrammarStore.this.getDict(mKey));
+            }
+            write(getFsg(mKey), fsg.toString());
+            prune();
+        }
+
+        public void abort() {
+            try {
+                mDict.close();
+            } catch (IOException e) {
+                // the file is dropped anyway
+            }
+            mTmp.delete();
+        }
+    }
+
+    private void write(File file, String content) throws IOException {
+        File tmp = new File(file.getPath() + TMP);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    private void prune() {
+        File[] grammars = mDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(FSG);
+            }
+        });
+        if (grammars == null || grammars.length <= KEEP) return;
+        Arrays.sort(grammars, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l > r ? -1 : l < r ? 1 : 0;
+            }
+        });
+        for (int i = KEEP; i < grammars.length; i++) {
+            String name = grammars[i].getName();
+            String key = name.substring(0, name.length() - FSG.length());
+            grammars[i].delete();
+            getDict(key).delete();
+        }
+    }
+
+    private static void update(MessageDigest digest, String str) throws UnsupportedEncodingException {
+        digest.update(str.getBytes("UTF-8"));
+        digest.update((byte) '\n');
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.recognizer;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only view of a binary lexicon produced by the compileLexicon build task.
+ *
+ * Words are looked up directly in the buffer, which is usually memory-mapped
+ * from an uncompressed asset, so nothing but the phone table is read upfront.
+ * Only absolute reads are used and lookups keep their scratch buffers per
+ * thread, so a single instance may be shared by threads.
+ */
+public class Lexicon {
+
+    private static final int MAGIC = 0x4C455832;
+    private static final int MAX_WORD = 255;
+
+    private final ByteBuffer mBuffer;
+    private final int[] mIds;
+    private final int mChecksum;
+    private final int mSize;
+    private final int mRestartCount;
+    private final int mRestarts;
+
+    private final ThreadLocal<byte[][]> mScratch = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[][]{new byte[MAX_WORD], new byte[MAX_WORD]};
+        }
+    };
+
+    /**
+     * Phones of the lexicon are added to the phone set, lookups return ids
+     * from that set.
+     */
+    public Lexicon(ByteBuffer buffer, PhoneSet phoneSet) {
+        mBuffer = buffer;
+        if (buffer.limit() < 8 || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a binary lexicon");
+        }
+        mChecksum = buffer.getInt(4);
+        int pos = 8;
+        mIds = new int[buffer.getShort(pos) & 0xFFFF];
+        pos += 2;
+        for (int i = 0; i < mIds.length; i++) {
+            int length = buffer.get(pos++) & 0xFF;
+            mIds[i] = phoneSet.add(decode(pos, length));
+            pos += length;
+        }
+        mSize = buffer.getInt(pos);
+        mRestartCount = buffer.getInt(pos + 4);
+        mRestarts = pos + 8;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Fingerprint of the table: the checksum of its whole content, which the
+     * compiler writes into the header, so nothing else is read for it.
+     */
+    public String getVersion() {
+        return Long.toHexString(mChecksum & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Reads the whole table and checks it against the checksum in the header.
+     * Throws IllegalArgumentException if they differ.
+     */
+    public void verify() {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[4096];
+        int pos = 8;
+        int limit = mBuffer.limit();
+        while (pos < limit) {
+            int count = Math.min(chunk.length, limit - pos);
+            for (int i = 0; i < count; i++) {
+                chunk[i] = mBuffer.get(pos + i);
+            }
+            crc.update(chunk, 0, count);
+            pos += count;
+        }
+        if ((int) crc.getValue() != mChecksum) {
+            throw new IllegalArgumentException("Corrupted binary lexicon");
+        }
+    }
+
+    /**
+     * Appends phones of the word to the buffer. Returns false and leaves the
+     * buffer as is if there is no such word.
+     */
+    public boolean get(String word, PhoneBuffer out) {
+        byte[][] scratch = mScratch.get();
+        byte[] key = scratch[0];
+        int keyLength = encode(word, key);
+        if (keyLength < 0) return false;
+
+        // last block starting with a word not greater than the key
+        int block = -1;
+        int lo = 0;
+        int hi = mRestartCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int offset = restart(mid);
+            int cmp = compare(offset + 2, mBuffer.get(offset + 1) & 0xFF, key, keyLength);
+            if (cmp == 0) return phons(offset + 2 + keyLength, out);
+            if (cmp < 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (block < 0) return false;
+
+        byte[] current = scratch[1];
+        int pos = restart(block);
+        int end = block + 1 < mRestartCount ? restart(block + 1) : mBuffer.limit();
+        while (pos < end) {
+            int shared = mBuffer.get(pos) & 0xFF;
+            int suffix = mBuffer.get(pos + 1) & 0xFF;
+            pos += 2;
+            for (int i = 0; i < suffix; i++) {
+                current[shared + i] = mBuffer.get(pos + i);
+            }
+            pos += suffix;
+            int cmp = compare(current, shared + suffix, key, keyLength);
+            if (cmp == 0) return phons(pos, out);
+            if (cmp > 0) return false;
+            pos += 1 + (mBuffer.get(pos) & 0xFF);
+        }
+        return false;
+    }
+
+    private int restart(int index) {
+        return mBuffer.getInt(mRestarts + 4 * index);
+    }
+
+    private boolean phons(int pos, PhoneBuffer out) {
+        int count = mBuffer.get(pos) & 0xFF;
+        for (int i = 1; i <= count; i++) {
+            out.add(mIds[mBuffer.get(pos + i) & 0xFF]);
+        }
+        return true;
+    }
+
+    private int compare(int pos, int length, byte[] key, int keyLength) {
+        int min = Math.min(length, keyLength);
+        for (int i = 0; i < min; i++) {
+            int cmp = (mBuffer.get(pos + i) & 0xFF) - (key[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return length - keyLength;
+    }
+
+    private static int compare(byte[] word, int length, byte[] key, int keyLength) {
+        int min = Math.min(length, keyLength);
+        for (int i = 0; i < min; i++) {
+            int cmp = (word[i] & 0xFF) - (key[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return length - keyLength;
+    }
+
+    private String decode(int pos, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(pos + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes UTF-8 bytes of the word the same way as String.getBytes does.
+     * Returns their count or -1 if the word is longer than any in the lexicon.
+     */
+    private static int encode(String word, byte[] out) {
+        int length = 0;
+        for (int i = 0; i < word.length(); i++) {
+            char ch = word.charAt(i);
+            int cp = ch;
+            if (Character.isHighSurrogate(ch) && i + 1 < word.length()
+                    && Character.isLowSurrogate(word.charAt(i + 1))) {
+                cp = Character.toCodePoint(ch, word.charAt(++i));
+            } else if (ch >= Character.MIN_SURROGATE && ch <= Character.MAX_SURROGATE) {
+                cp = '?';
+            }
+            int bytes = cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+            if (length + bytes > out.length) return -1;
+            if (bytes == 1) {
+                out[length++] = (byte) cp;
+            } else if (bytes == 2) {
+                out[length++] = (byte) (0xC0 | (cp >> 6));
+                out[length++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (bytes == 3) {
+                out[length++] = (byte) (0xE0 | (cp >> 12));
+                out[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[length++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                out[length++] = (byte) (0xF0 | (cp >> 18));
+                out[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[length++] = (byte) (0x80 | (cp & 0x3F));
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2012, Institute of Cybernetics at Tallinn University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.recognizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+public class PhonMapper {
+
+    private static final String TAG = "PhonMapper";
+
+    private static final String[] GARBAGE = {"а","е","ё","и","о","у","э","ю","я"};
+
+    private static final Map<String, String> phons = new LinkedHashMap<String, String>() {{
+        put("E", "j e");
+        put("Y", "j ae");
+        put("U", "uu");
+        put("W", "v");
+        put("J", "ee j");
+        put("I", "oo j");
+        put("'", "j u");
+
+        put("P", "b");
+        put("Q", "g");
+        put("B", "bb");
+        put("R", "rr");
+        put("G", "gg");
+        put("K", "kk");
+        put("L", "ll");
+        put("V", "vv");
+        put("M", "mm");
+        put("H", "hh");
+        put("N", "nn");
+        put("T", "tt");
+        put("D", "dd");
+        put("F", "ff");
+        put("S", "ss");
+
+        put("а", "a");
+        put("б", "p");
+        put("в", "f");
+        put("г", "k");
+        put("д", "d");
+        put("е", "e");
+        put("ё", "j oo");
+        put("ж", "zh");
+        put("з", "z");
+        put("и", "i");
+        put("й", "j");
+        put("к", "k");
+        put("л", "l");
+        put("м", "m");
+        put("н", "n");
+        put("о", "ay");
+        put("п", "p");
+        put("р", "r");
+        put("с", "s");
+        put("т", "t");
+        put("у", "u");
+        put("ф", "f");
+        put("х", "h");
+        put("ц", "c");
+        put("ч", "ch");
+        put("ш", "sh");
+        put("щ", "sch");
+        put("ы", "y");
+        put("э", "ay");
+        put("ю", "u");
+        put("я", "a");
+    }};
+
+    /**
+     * Phones of hmm/ru/noisedict.
+     */
+    private static final String[] NOISE = {"SIL"};
+
+    private static final PhoneSet PHONES = new PhoneSet(phons.values());
+
+    static {
+        for (String phone : NOISE) {
+            PHONES.add(phone);
+        }
+    }
+
+    private static final PhonTransducer TRANSDUCER = new PhonTransducer(phons, PHONES);
+
+    private static final int MIN_BATCH = 32;
+
+    private final Map<String, int[]> mPhons = new HashMap<String, int[]>();
+    private final Lexicon mLexicon;
+    private final String mLexiconVersion;
+    private volatile PronounCache mCache;
+
+    public PhonMapper() {
+        mLexicon = null;
+        mLexiconVersion = "";
+    }
+
+    /**
+     * Uses a binary lexicon, see {@link Lexicon}.
+     */
+    public PhonMapper(ByteBuffer lexicon) {
+        mLexicon = new Lexicon(lexicon, PHONES);
+        mLexiconVersion = mLexicon.getVersion();
+    }
+
+    public PhonMapper(InputStream is) {
+        mLexicon = null;
+        CRC32 crc = new CRC32();
+        try {
+            BufferedReader bis = new BufferedReader(new InputStreamReader(is));
+            String line;
+            while ((line = bis.readLine()) != null) {
+                line = line.trim();
+                if(line.length() > 0) {
+                    crc.update(line.getBytes("UTF-8"));
+                    String[] data = line.split("  ");
+                    String[] phones = data[1].split(" ");
+                    int[] ids = new int[phones.length];
+                    for (int i = 0; i < phones.length; i++) {
+                        ids[i] = PHONES.add(phones[i]);
+                    }
+                    mPhons.put(data[0], ids);
+                }
+            }
+            bis.close();
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "Can't read phonemes", e);
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        mLexiconVersion = Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Version of the letter-to-phone rules, changes whenever they do.
+     */
+    public static String getRulesVersion() {
+        return TRANSDUCER.getVersion();
+    }
+
+    /**
+     * Version of everything pronunciations depend on: the rules and the lexicon.
+     */
+    public String getVersion() {
+        return getRulesVersion() + "-" + mLexiconVersion;
+    }
+
+    public static PhoneSet getPhoneSet() {
+        return PHONES;
+    }
+
+    public void setCache(PronounCache cache) {
+        mCache = cache;
+    }
+
+    public String[] getGarbage() {
+        return GARBAGE;
+    }
+
+    public String getPronoun(String str) {
+        PhoneBuffer buffer = new PhoneBuffer();
+        getPhons(str, buffer);
+        StringBuilder sb = new StringBuilder();
+        buffer.appendTo(sb, PHONES);
+        return sb.toString();
+    }
+
+    public ArrayList<String> getPhons(String str) {
+        PhoneBuffer buffer = new PhoneBuffer();
+        getPhons(str, buffer);
+        return buffer.toList(PHONES);
+    }
+
+    /**
+     * Transcribes words in batches on the executor. Pronunciations are in the
+     * order of the words however the work is split between threads.
+     */
+    public String[] getPronouns(Collection<String> words, ExecutorService executor) throws InterruptedException {
+        final String[] array = words.toArray(new String[words.size()]);
+        final String[] result = new String[array.length];
+        int batches = Runtime.getRuntime().availableProcessors() * 4;
+        int batch = Math.max(MIN_BATCH, (array.length + batches - 1) / batches);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int from = 0; from < array.length; from += batch) {
+            final int start = from;
+            final int end = Math.min(array.length, from + batch);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    PhoneBuffer buffer = new PhoneBuffer();
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = start; i < end; i++) {
+                        getPhons(array[i], buffer);
+                        sb.setLength(0);
+                        buffer.appendTo(sb, PHONES);
+                        result[i] = sb.toString();
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fills the buffer with ids of phones from {@link #getPhoneSet()}.
+     * Safe to call from several threads with different buffers.
+     * Doesn't allocate for lowercase words that are in the lexicon or in the cache.
+     */
+    public void getPhons(CharSequence word, PhoneBuffer out) {
+        out.clear();
+        String str = toLowerCase(word);
+
+        int[] ids = mPhons.get(str);
+        if (ids != null) {
+            out.add(ids);
+            return;
+        }
+
+        if (mLexicon != null && mLexicon.get(str, out)) {
+            return;
+        }
+
+        PronounCache cache = mCache;
+        if (cache != null && cache.get(str, out)) {
+            return;
+        }
+
+        TRANSDUCER.transduce(str, out);
+        if (cache != null) {
+            cache.put(str, out);
+        }
+    }
+
+    private static String toLowerCase(CharSequence word) {
+        for (int i = 0; i < word.length(); i++) {
+            char ch = word.charAt(i);
+            if (Character.toLowerCase(ch) != ch
+                    || (ch >= Character.MIN_SURROGATE && ch <= Character.MAX_SURROGATE)) {
+                return word.toString().toLowerCase();
+            }
+        }
+        return word.toString();
+    }
+
+}
\ No newline at end of file
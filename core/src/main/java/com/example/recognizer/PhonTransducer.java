@@ -0,0 +1,256 @@
+package com.example.recognizer;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Letter-to-phone transducer for words missing from the lexicon.
+ *
+ * It replaces the cascade of regular expressions that was applied to every word
+ * one after another. The rule table is compiled once into per-letter lookup
+ * arrays and the word is then rewritten in a single left-to-right pass which
+ * writes phones straight into the output. A position is decided by looking at
+ * most a few letters ahead, so the results are the same as running the rules
+ * in order, including the cases where a rule sees the output of an earlier one.
+ */
+final class PhonTransducer {
+
+    /**
+     * Context rules in cascade order: letter, right context, replacement.
+     * A letter is replaced when the next letter is in the context and has not
+     * been replaced by one of the previous rules.
+     */
+    private static final String[][] CONTEXT_RULES = {
+            {"б", "аоуэырлнвзмдг", "P"},
+            {"г", "аоуэырлнвзмдб", "Q"},
+            {"в", "аоуэырлнгзмдб", "W"},
+
+            {"б", "еиюёяь", "B"},
+            {"г", "еиюёяь", "G"},
+            {"к", "еиюёяь", "K"},
+            {"л", "еиюёяь", "L"},
+            {"в", "еиюёяь", "V"},
+            {"м", "еиюёяь", "M"},
+            {"н", "еиюёяь", "N"},
+            {"р", "еиюёяь", "R"},
+            {"х", "еиюёяь", "H"},
+            {"т", "еиюёяь", "T"},
+            {"д", "еиюёяь", "D"},
+            {"ф", "еиюёяь", "F"},
+            {"с", "еиюёяь", "S"},
+    };
+
+    /*
+     * Rules applied after the context ones, hardcoded in transduce():
+     *
+     *   ей          -> J
+     *   ^е          -> E
+     *   ^я          -> Y
+     *   ^ю          -> '
+     *   ([аоуеэы])ю -> $1'
+     *   (у|ю)(к)$   -> U$2
+     *   ой$         -> I
+     */
+    private static final String VOWELS = "аоуеэы";
+
+    /**
+     * Bump when the hardcoded rules above change, so that the version hash
+     * changes with them.
+     */
+    private static final int REVISION = 1;
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final int[][] mRules;
+    private final boolean[][] mContexts = new boolean[CONTEXT_RULES.length][];
+    private final char[] mSymbols = new char[CONTEXT_RULES.length];
+    private final int[][] mPhones;
+    private final String mVersion;
+
+    PhonTransducer(Map<String, String> phons, PhoneSet phoneSet) {
+        // tables are indexed by letter, so size them by the largest one in use
+        int size = 0;
+        for (String[] rule : CONTEXT_RULES) {
+            size = Math.max(size, max(rule[0] + rule[1]) + 1);
+        }
+        mRules = new int[size][];
+        for (int r = 0; r < CONTEXT_RULES.length; r++) {
+            char letter = CONTEXT_RULES[r][0].charAt(0);
+            String context = CONTEXT_RULES[r][1];
+            if (context.indexOf(letter) >= 0) {
+                throw new IllegalStateException("Rule " + r + " matches its own context");
+            }
+            mContexts[r] = new boolean[size];
+            for (int i = 0; i < context.length(); i++) {
+                mContexts[r][context.charAt(i)] = true;
+            }
+            mSymbols[r] = CONTEXT_RULES[r][2].charAt(0);
+            mRules[letter] = append(mRules[letter], r);
+        }
+        size = 0;
+        for (String symbol : phons.keySet()) {
+            size = Math.max(size, max(symbol) + 1);
+        }
+        mPhones = new int[size][];
+        for (Map.Entry<String, String> entry : phons.entrySet()) {
+            String[] phones = entry.getValue().split(" ");
+            int[] ids = new int[phones.length];
+            for (int i = 0; i < phones.length; i++) {
+                ids[i] = phoneSet.add(phones[i]);
+            }
+            mPhones[entry.getKey().charAt(0)] = ids;
+        }
+        mVersion = version(phons);
+    }
+
+    /**
+     * Hash of the rule and phone tables. Anything derived from the transducer
+     * output should be dropped when it changes.
+     */
+    String getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Appends phones of the lowercase word to the buffer.
+     */
+    void transduce(String str, PhoneBuffer out) {
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char ch = str.charAt(i);
+            int rule = rule(str, i, NONE);
+            if (rule != NONE) {
+                emit(mSymbols[rule], out);
+                continue;
+            }
+            char next = i + 1 < length ? str.charAt(i + 1) : 0;
+            switch (ch) {
+                case 'е':
+                    if (next == 'й' && isRaw(str, i + 1)) {
+                        emit('J', out);
+                        i++;
+                        continue;
+                    }
+                    if (i == 0) {
+                        ch = 'E';
+                    }
+                    break;
+                case 'я':
+                    if (i == 0) {
+                        ch = 'Y';
+                    }
+                    break;
+                case 'ю':
+                    if (i == 0 || isVowelBefore(str, i)) {
+                        ch = '\'';
+                    } else if (next == 'к' && isRaw(str, i + 1) && isEnd(str, i + 2)) {
+                        ch = 'U';
+                    }
+                    break;
+                case 'у':
+                    if (next == 'к' && isRaw(str, i + 1) && isEnd(str, i + 2)) {
+                        ch = 'U';
+                    }
+                    break;
+                case 'о':
+                    if (next == 'й' && isRaw(str, i + 1) && isEnd(str, i + 2)) {
+                        emit('I', out);
+                        i++;
+                        continue;
+                    }
+                    break;
+            }
+            emit(ch, out);
+        }
+    }
+
+    /**
+     * Returns the first context rule below the limit that replaces the letter
+     * at the index, or NONE if the letter stays as is up to that rule.
+     */
+    private int rule(String str, int index, int limit) {
+        char ch = str.charAt(index);
+        if (ch >= mRules.length || mRules[ch] == null || index + 1 >= str.length()) return NONE;
+        char next = str.charAt(index + 1);
+        if (next >= mRules.length) return NONE;
+        for (int r : mRules[ch]) {
+            if (r >= limit) break;
+            if (mContexts[r][next] && rule(str, index + 1, r) == NONE) {
+                return r;
+            }
+        }
+        return NONE;
+    }
+
+    private boolean isRaw(String str, int index) {
+        return rule(str, index, NONE) == NONE;
+    }
+
+    private boolean isVowelBefore(String str, int index) {
+        char prev = str.charAt(index - 1);
+        if (VOWELS.indexOf(prev) < 0 || !isRaw(str, index - 1)) return false;
+        // leading е has already become E
+        return prev != 'е' || index - 1 > 0;
+    }
+
+    /**
+     * Same positions as where {@code $} matches in java.util.regex: the end of
+     * the input or right before a final line terminator.
+     */
+    private static boolean isEnd(String str, int index) {
+        int length = str.length();
+        if (index == length) return true;
+        if (index == length - 2) {
+            return str.charAt(index) == '\r' && str.charAt(index + 1) == '\n';
+        }
+        if (index == length - 1) {
+            char ch = str.charAt(index);
+            if (ch == '\n') {
+                return index == 0 || str.charAt(index - 1) != '\r';
+            }
+            return ch == '\r' || ch == '\u0085' || (ch | 1) == '\u2029';
+        }
+        return false;
+    }
+
+    private void emit(char ch, PhoneBuffer out) {
+        int[] ids = ch < mPhones.length ? mPhones[ch] : null;
+        if (ids != null) {
+            out.add(ids);
+        }
+    }
+
+    private static String version(Map<String, String> phons) {
+        StringBuilder sb = new StringBuilder().append(REVISION).append('\n');
+        for (String[] rule : CONTEXT_RULES) {
+            sb.append(rule[0]).append(' ').append(rule[1]).append(' ').append(rule[2]).append('\n');
+        }
+        for (Map.Entry<String, String> entry : phons.entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        CRC32 crc = new CRC32();
+        try {
+            crc.update(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static char max(String str) {
+        char max = 0;
+        for (int i = 0; i < str.length(); i++) {
+            max = (char) Math.max(max, str.charAt(i));
+        }
+        return max;
+    }
+
+    private static int[] append(int[] array, int value) {
+        if (array == null) return new int[]{value};
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = value;
+        return result;
+    }
+}
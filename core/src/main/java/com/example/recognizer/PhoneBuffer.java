@@ -0,0 +1,71 @@
+package com.example.recognizer;
+
+import java.util.ArrayList;
+
+/**
+ * Reusable buffer of phone ids from a {@link PhoneSet}.
+ */
+public class PhoneBuffer {
+
+    private int[] mIds;
+    private int mSize;
+
+    public PhoneBuffer() {
+        this(16);
+    }
+
+    public PhoneBuffer(int capacity) {
+        mIds = new int[capacity];
+    }
+
+    public void add(int id) {
+        if (mSize == mIds.length) {
+            int[] ids = new int[mIds.length * 2 + 1];
+            System.arraycopy(mIds, 0, ids, 0, mSize);
+            mIds = ids;
+        }
+        mIds[mSize++] = id;
+    }
+
+    public void add(int[] ids) {
+        for (int id : ids) {
+            add(id);
+        }
+    }
+
+    public int get(int index) {
+        return mIds[index];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    public int[] toArray() {
+        int[] ids = new int[mSize];
+        System.arraycopy(mIds, 0, ids, 0, mSize);
+        return ids;
+    }
+
+    public ArrayList<String> toList(PhoneSet phoneSet) {
+        ArrayList<String> phons = new ArrayList<String>(mSize);
+        for (int i = 0; i < mSize; i++) {
+            phons.add(phoneSet.get(mIds[i]));
+        }
+        return phons;
+    }
+
+    /**
+     * Appends phones separated by spaces.
+     */
+    public void appendTo(StringBuilder sb, PhoneSet phoneSet) {
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(phoneSet.get(mIds[i]));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.recognizer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps phones to small integer ids, so pronunciations can be kept in
+ * primitive buffers instead of lists of strings.
+ *
+ * Ids are never reused or removed. Lookups by id don't lock.
+ */
+public final class PhoneSet {
+
+    private final Map<String, Integer> mIds = new HashMap<String, Integer>();
+    private volatile String[] mPhones = new String[0];
+
+    /**
+     * Adds every phone of the space separated pronunciations.
+     */
+    public PhoneSet(Iterable<String> pronunciations) {
+        for (String pronunciation : pronunciations) {
+            for (String phone : pronunciation.split(" ")) {
+                add(phone);
+            }
+        }
+    }
+
+    /**
+     * Returns id of the phone, adding it if it's new.
+     */
+    public synchronized int add(String phone) {
+        Integer id = mIds.get(phone);
+        if (id != null) return id;
+        String[] phones = new String[mPhones.length + 1];
+        System.arraycopy(mPhones, 0, phones, 0, mPhones.length);
+        phones[mPhones.length] = phone;
+        mIds.put(phone, mPhones.length);
+        mPhones = phones;
+        return phones.length - 1;
+    }
+
+    /**
+     * Returns id of the phone or -1 if there is no such phone.
+     */
+    public synchronized int id(String phone) {
+        Integer id = mIds.get(phone);
+        return id != null ? id : -1;
+    }
+
+    public String get(int id) {
+        return mPhones[id];
+    }
+
+    public int size() {
+        return mPhones.length;
+    }
+}
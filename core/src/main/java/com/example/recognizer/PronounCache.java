@@ -0,0 +1,213 @@
+package com.example.recognizer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Two-level cache of generated pronunciations.
+ *
+ * The first level is a bounded LRU of phone ids. The second level keeps
+ * pronunciations as strings and is stored in a file, so that a cold start
+ * with the same vocabulary doesn't run letter-to-phone rules at all. The file
+ * starts with the rules version and is ignored once the rules change. It only
+ * keeps the words looked up since it was loaded, up to a limit.
+ */
+public class PronounCache {
+
+    private static final String TAG = "PronounCache";
+
+    private static final String HEADER = "#version ";
+
+    public static final int STORED_CAPACITY = 20000;
+
+    private final File mFile;
+    private final String mVersion;
+    private final PhoneSet mPhoneSet = PhonMapper.getPhoneSet();
+    private final Map<String, int[]> mMemory;
+    private final Map<String, String> mStored = new HashMap<String, String>();
+    private final Set<String> mUsed = new HashSet<String>();
+    private final int mStoredCapacity;
+
+    private boolean mDirty;
+    private int mHits;
+    private int mStoredHits;
+    private int mMisses;
+    private int mEvictions;
+
+    public PronounCache(File file, String version, int capacity) {
+        this(file, version, capacity, STORED_CAPACITY);
+    }
+
+    public PronounCache(File file, String version, final int capacity, int storedCapacity) {
+        mFile = file;
+        mVersion = version;
+        mStoredCapacity = storedCapacity;
+        mMemory = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                if (size() > capacity) {
+                    mEvictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Appends cached phones of the word to the buffer. Returns false if the
+     * word isn't cached.
+     */
+    public synchronized boolean get(String word, PhoneBuffer out) {
+        int[] ids = mMemory.get(word);
+        if (ids != null) {
+            mHits++;
+            out.add(ids);
+            return true;
+        }
+        String stored = mStored.get(word);
+        if (stored != null) {
+            mStoredHits++;
+            mUsed.add(word);
+            String[] phones = stored.length() > 0 ? stored.split(" ") : new String[0];
+            ids = new int[phones.length];
+            for (int i = 0; i < phones.length; i++) {
+                ids[i] = mPhoneSet.add(phones[i]);
+            }
+            mMemory.put(word, ids);
+            out.add(ids);
+            return true;
+        }
+        mMisses++;
+        return false;
+    }
+
+    public synchronized void put(String word, PhoneBuffer phons) {
+        mMemory.put(word, phons.toArray());
+        // the file is line based
+        if (word.indexOf('\n') >= 0 || word.indexOf('\r') >= 0) return;
+        if (!mStored.containsKey(word) && mStored.size() >= mStoredCapacity) return;
+        StringBuilder sb = new StringBuilder();
+        phons.appendTo(sb, mPhoneSet);
+        mUsed.add(word);
+        if (mStored.put(word, sb.toString()) == null) {
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Reads stored pronunciations. Returns false if the file is missing,
+     * unreadable or was written for other rules.
+     */
+    public synchronized boolean load() {
+        if (!mFile.exists()) return false;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+            String line = reader.readLine();
+            if (line == null || !line.equals(HEADER + mVersion)) {
+                mDirty = true;
+                return false;
+            }
+            while (mStored.size() < mStoredCapacity && (line = reader.readLine()) != null) {
+                int index = line.indexOf("  ");
+                if (index > 0) {
+                    mStored.put(line.substring(0, index), line.substring(index + 2));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "Can't read cache", e);
+            return false;
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Writes pronunciations of the words looked up since loading, if they
+     * differ from the file. The others are dropped, so call it once the whole
+     * vocabulary has been transcribed.
+     */
+    public synchronized void save() throws IOException {
+        for (Iterator<String> it = mStored.keySet().iterator(); it.hasNext(); ) {
+            if (!mUsed.contains(it.next())) {
+                it.remove();
+                mDirty = true;
+            }
+        }
+        if (!mDirty) return;
+        File dir = mFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory: " + dir);
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            writer.write(HEADER);
+            writer.write(mVersion);
+            writer.write('\n');
+            for (Map.Entry<String, String> entry : mStored.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write("  ");
+                writer.write(entry.getValue());
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(mFile)) {
+            throw new IOException("Cannot write " + mFile);
+        }
+        mDirty = false;
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getStoredHits() {
+        return mStoredHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    public synchronized int getEvictions() {
+        return mEvictions;
+    }
+
+    public synchronized int getStoredSize() {
+        return mStored.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + mHits + " stored=" + mStoredHits + " misses=" + mMisses + " evictions=" + mEvictions;
+    }
+
+    private static void close(BufferedReader reader) {
+        if (reader == null) return;
+        try {
+            reader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.recognizer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes raw audio of utterances to the raw log directory without blocking
+ * the audio thread.
+ *
+ * The audio thread copies samples into a ring of preallocated direct buffers
+ * and never waits: when the ring is full the frame is dropped and counted. A
+ * single writer thread drains the ring into one file per utterance, 16-bit
+ * samples in native byte order like the decoder's own raw logs. The directory
+ * is kept under a quota by deleting the oldest .raw files first, and samples
+ * that don't fit even then are dropped too.
+ *
+ * Every slot carries the number of its utterance, so when the ring drops the
+ * start or the end of one the writer still keeps utterances in files of their
+ * own: samples with no file of their utterance open are dropped, and a file is
+ * closed as soon as samples of a later utterance arrive.
+ *
+ * The ring has one producer and one consumer, so {@link #beginUtterance()},
+ * {@link #write(short[], int)} and {@link #endUtterance()} must all be called
+ * from the same thread.
+ */
+public class RawAudioLog {
+
+    private static final String TAG = "RawAudioLog";
+
+    private static final String RAW = ".raw";
+
+    private static final byte DATA = 0;
+    private static final byte BEGIN = 1;
+    private static final byte END = 2;
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final File mDir;
+    private final long mQuota;
+
+    private final ByteBuffer[] mSlots;
+    private final byte[] mTypes;
+    private final long[] mUtterances;
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    private final AtomicLong mDroppedMarkers = new AtomicLong();
+    private final AtomicLong mWrittenFrames = new AtomicLong();
+    private final AtomicLong mEvictedFiles = new AtomicLong();
+
+    private volatile boolean mRunning;
+    private volatile Thread mWriter;
+
+    // owned by the audio thread
+    private long mUtterance;
+
+    // owned by the writer thread
+    private FileChannel mOut;
+    private File mFile;
+    private long mOpen = -1;
+    private long mUsed;
+    private long mNames;
+
+    /**
+     * Ring of {@code slots} buffers, {@code slotBytes} each, writing into the
+     * directory while it's under {@code quota} bytes.
+     */
+    public RawAudioLog(File dir, long quota, int slots, int slotBytes) {
+        mDir = dir;
+        mQuota = quota;
+        mSlots = new ByteBuffer[slots];
+        mTypes = new byte[slots];
+        mUtterances = new long[slots];
+        for (int i = 0; i < slots; i++) {
+            mSlots[i] = ByteBuffer.allocateDirect(slotBytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    public RawAudioLog(File dir, long quota) {
+        this(dir, quota, 64, 4096);
+    }
+
+    public synchronized void start() {
+        if (mWriter != null) return;
+        mRunning = true;
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, TAG);
+        mWriter.setPriority(Thread.MIN_PRIORITY);
+        mWriter.start();
+    }
+
+    /**
+     * Writes out what is already queued and stops the writer.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (mWriter == null) return;
+        mRunning = false;
+        LockSupport.unpark(mWriter);
+        mWriter.join();
+        mWriter = null;
+    }
+
+    public boolean beginUtterance() {
+        mUtterance++;
+        return offer(BEGIN, null, 0, 0);
+    }
+
+    /**
+     * Queues samples of the current utterance. Returns false if some of them
+     * were dropped because the writer is behind.
+     */
+    public boolean write(short[] buffer, int count) {
+        int capacity = mSlots[0].capacity() / 2;
+        boolean queued = true;
+        for (int offset = 0; offset < count; offset += capacity) {
+            queued &= offer(DATA, buffer, offset, Math.min(capacity, count - offset));
+        }
+        return queued;
+    }
+
+    public boolean endUtterance() {
+        boolean queued = offer(END, null, 0, 0);
+        Thread writer = mWriter;
+        if (writer != null) LockSupport.unpark(writer);
+        return queued;
+    }
+
+    /**
+     * Frames that didn't make it to a file: the ring was full, the start of
+     * their utterance was dropped or the quota was exceeded.
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames.get();
+    }
+
+    /**
+     * Starts and ends of utterances dropped because the ring was full.
+     */
+    public long getDroppedMarkers() {
+        return mDroppedMarkers.get();
+    }
+
+    public long getWrittenFrames() {
+        return mWrittenFrames.get();
+    }
+
+    public long getEvictedFiles() {
+        return mEvictedFiles.get();
+    }
+
+    @Override
+    public String toString() {
+        return "written=" + getWrittenFrames() + " dropped=" + getDroppedFrames()
+                + " markers=" + getDroppedMarkers() + " evicted=" + getEvictedFiles();
+    }
+
+    private boolean offer(byte type, short[] buffer, int offset, int count) {
+        long tail = mTail.get();
+        if (tail - mHead.get() == mSlots.length) {
+            if (type == DATA) {
+                mDroppedFrames.incrementAndGet();
+            } else {
+                mDroppedMarkers.incrementAndGet();
+            }
+            return false;
+        }
+        int index = (int) (tail % mSlots.length);
+        ByteBuffer slot = mSlots[index];
+        slot.clear();
+        if (buffer != null) {
+            slot.asShortBuffer().put(buffer, offset, count);
+            slot.limit(count * 2);
+        } else {
+            slot.limit(0);
+        }
+        mTypes[index] = type;
+        mUtterances[index] = mUtterance;
+        // publishes the slot to the writer
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    private void drain() {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Logger.getLogger(TAG).severe("Cannot create directory: " + mDir);
+        }
+        mUsed = evict(0);
+        while (true) {
+            long head = mHead.get();
+            if (head == mTail.get()) {
+                if (!mRunning) break;
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            int index = (int) (head % mSlots.length);
+            try {
+                consume(mTypes[index], mUtterances[index], mSlots[index]);
+            } catch (IOException e) {
+                Logger.getLogger(TAG).log(Level.SEVERE, "Can't write " + mFile, e);
+                close();
+            }
+            mHead.lazySet(head + 1);
+        }
+        close();
+    }
+
+    private void consume(byte type, long utterance, ByteBuffer slot) throws IOException {
+        switch (type) {
+            case BEGIN:
+                close();
+                mFile = new File(mDir, name());
+                mOut = new FileOutputStream(mFile).getChannel();
+                mOpen = utterance;
+                break;
+            case END:
+                // the end of an utterance whose start was dropped has nothing to close
+                if (mOpen == utterance) close();
+                break;
+            default:
+                if (mOpen != utterance) {
+                    // the end of the open utterance was dropped, and the start of this one too
+                    close();
+                    mDroppedFrames.incrementAndGet();
+                    return;
+                }
+                int bytes = slot.remaining();
+                if (mUsed + bytes > mQuota) {
+                    mUsed = evict(bytes);
+                    if (mUsed + bytes > mQuota) {
+                        mDroppedFrames.incrementAndGet();
+                        return;
+                    }
+                }
+                while (slot.hasRemaining()) {
+                    mOut.write(slot);
+                }
+                mUsed += bytes;
+                mWrittenFrames.incrementAndGet();
+        }
+    }
+
+    private void close() {
+        mOpen = -1;
+        if (mOut == null) return;
+        try {
+            mOut.close();
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "Can't close " + mFile, e);
+        }
+        mOut = null;
+        mFile = null;
+    }
+
+    /**
+     * Deletes the oldest finished .raw files until there is room for the given
+     * number of bytes. Returns the size of the .raw files that are left, other
+     * files are neither counted nor deleted.
+     */
+    private long evict(long bytes) {
+        File[] files = mDir.listFiles();
+        if (files == null) return 0;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : l > r ? 1 : lhs.getName().compareTo(rhs.getName());
+            }
+        });
+        long used = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(RAW)) used += file.length();
+        }
+        for (File file : files) {
+            if (used + bytes <= mQuota) break;
+            if (file.equals(mFile) || !file.getName().endsWith(RAW)) continue;
+            long length = file.length();
+            if (file.delete()) {
+                used -= length;
+                mEvictedFiles.incrementAndGet();
+            }
+        }
+        return used;
+    }
+
+    private String name() {
+        return System.currentTimeMillis() + "-" + (mNames++) + RAW;
+    }
+}
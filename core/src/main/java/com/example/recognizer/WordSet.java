@@ -0,0 +1,110 @@
+package com.example.recognizer;
+
+/**
+ * Compact set of words for deduplication.
+ *
+ * Slots of an open-addressing table hold 64-bit word hashes; characters of
+ * the words are packed into one array and compared only when hashes match.
+ */
+final class WordSet {
+
+    private long[] mHashes = new long[64];
+    private int[] mStarts = new int[64];
+    private int[] mLengths = new int[64];
+    private char[] mChars = new char[512];
+    private int mUsed;
+    private int mSize;
+
+    boolean contains(CharSequence word) {
+        return find(word, hash(word)) >= 0;
+    }
+
+    /**
+     * Returns false if the word is already in the set.
+     */
+    boolean add(CharSequence word) {
+        long hash = hash(word);
+        int slot = find(word, hash);
+        if (slot >= 0) return false;
+        slot = -slot - 1;
+
+        int length = word.length();
+        if (mUsed + length > mChars.length) {
+            char[] chars = new char[Math.max(mChars.length * 2, mUsed + length)];
+            System.arraycopy(mChars, 0, chars, 0, mUsed);
+            mChars = chars;
+        }
+        for (int i = 0; i < length; i++) {
+            mChars[mUsed + i] = word.charAt(i);
+        }
+        mHashes[slot] = hash;
+        mStarts[slot] = mUsed;
+        mLengths[slot] = length;
+        mUsed += length;
+
+        if (++mSize * 4 > mHashes.length * 3) {
+            grow();
+        }
+        return true;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the slot of the word or -(free slot + 1) if it's not there.
+     */
+    private int find(CharSequence word, long hash) {
+        int mask = mHashes.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (mHashes[slot] != 0) {
+            if (mHashes[slot] == hash && equals(slot, word)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private boolean equals(int slot, CharSequence word) {
+        int length = mLengths[slot];
+        if (length != word.length()) return false;
+        int start = mStarts[slot];
+        for (int i = 0; i < length; i++) {
+            if (mChars[start + i] != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void grow() {
+        long[] hashes = mHashes;
+        int[] starts = mStarts;
+        int[] lengths = mLengths;
+        mHashes = new long[hashes.length * 2];
+        mStarts = new int[hashes.length * 2];
+        mLengths = new int[hashes.length * 2];
+        int mask = mHashes.length - 1;
+        for (int i = 0; i < hashes.length; i++) {
+            long hash = hashes[i];
+            if (hash == 0) continue;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (mHashes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            mHashes[slot] = hash;
+            mStarts[slot] = starts[i];
+            mLengths[slot] = lengths[i];
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the characters, never 0 since 0 marks a free slot.
+     */
+    private static long hash(CharSequence word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash != 0 ? hash : 1;
+    }
+}
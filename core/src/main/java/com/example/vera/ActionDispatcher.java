@@ -0,0 +1,185 @@
+package com.example.vera;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends actions to a controller.
+ *
+ * Actions on different devices run concurrently, up to a limit. Actions on
+ * the same device and service run one after another, and those waiting
+ * behind a running one are merged: only the last target is sent, and every
+ * listener of the merged actions hears about it.
+ */
+public class ActionDispatcher {
+
+    private static final int CONNECT_TIMEOUT = 3000;
+    private static final int READ_TIMEOUT = 10000;
+
+    public interface Listener {
+
+        /**
+         * Called on a transport thread once the controller has accepted the
+         * action, or the one it was merged into.
+         */
+        void onComplete(Action action);
+
+        void onFailure(Action action, Exception e);
+    }
+
+    public static class Action {
+
+        public final Device device;
+        public final String serviceId;
+        public final String action;
+        public final String argument;
+        public final String value;
+
+        public Action(Device device, String serviceId, String action, String argument, String value) {
+            this.device = device;
+            this.serviceId = serviceId;
+            this.action = action;
+            this.argument = argument;
+            this.value = value;
+        }
+
+        Url toUrl(Url baseUrl) {
+            return baseUrl.buildUpon().appendQueryParameter("id", "action")
+                    .appendQueryParameter("DeviceNum", String.valueOf(device.id))
+                    .appendQueryParameter("serviceId", serviceId)
+                    .appendQueryParameter("action", action)
+                    .appendQueryParameter(argument, value).build();
+        }
+
+        String key() {
+            return device.id + "/" + serviceId;
+        }
+
+        @Override
+        public String toString() {
+            return device.name + " " + action + " " + argument + "=" + value;
+        }
+    }
+
+    private final Url mBaseUrl;
+    private final Transport mTransport;
+    private final int mParallelism;
+
+    // guarded by this
+    private final Map<String, Slot> mSlots = new HashMap<String, Slot>();
+    private final LinkedList<Slot> mReady = new LinkedList<Slot>();
+    private int mRunning;
+    private int mMerged;
+
+    public ActionDispatcher(Url baseUrl, Transport transport, int parallelism) {
+        mBaseUrl = baseUrl;
+        mTransport = transport;
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Queues the action, the listener may be null.
+     */
+    public synchronized void dispatch(Action action, Listener listener) {
+        String key = action.key();
+        Slot slot = mSlots.get(key);
+        if (slot == null) {
+            slot = new Slot(key);
+            mSlots.put(key, slot);
+        }
+        if (slot.pending != null) {
+            slot.pending.action = action;
+            slot.pending.listeners.add(listener);
+            mMerged++;
+            return;
+        }
+        slot.pending = new Entry(action, listener);
+        if (slot.running == null) {
+            mReady.add(slot);
+            drain();
+        }
+    }
+
+    /**
+     * Number of actions that were merged into later ones instead of sent.
+     */
+    public synchronized int getMerged() {
+        return mMerged;
+    }
+
+    private void drain() {
+        while (mRunning < mParallelism && !mReady.isEmpty()) {
+            start(mReady.poll());
+        }
+    }
+
+    private void start(final Slot slot) {
+        final Entry entry = slot.pending;
+        slot.pending = null;
+        slot.running = entry;
+        mRunning++;
+        try {
+            mTransport.get(entry.action.toUrl(mBaseUrl), CONNECT_TIMEOUT, READ_TIMEOUT, Transport.TEXT, new Transport.Callback<String>() {
+                @Override
+                public void onResponse(String body) {
+                    finish(slot, entry, body != null ? null : new IOException("Controller refused " + entry.action));
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    finish(slot, entry, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // e.g. rejected after the transport was shut down, the callback will never come
+            finish(slot, entry, e);
+        }
+    }
+
+    private void finish(Slot slot, Entry entry, Exception error) {
+        synchronized (this) {
+            mRunning--;
+            slot.running = null;
+            if (slot.pending != null) {
+                mReady.add(slot);
+            } else {
+                mSlots.remove(slot.key);
+            }
+            drain();
+        }
+        for (Listener listener : entry.listeners) {
+            if (listener == null) continue;
+            if (error == null) {
+                listener.onComplete(entry.action);
+            } else {
+                listener.onFailure(entry.action, error);
+            }
+        }
+    }
+
+    private static class Slot {
+
+        final String key;
+        Entry running;
+        Entry pending;
+
+        Slot(String key) {
+            this.key = key;
+        }
+    }
+
+    private static class Entry {
+
+        Action action;
+        final List<Listener> listeners = new ArrayList<Listener>(1);
+
+        Entry(Action action, Listener listener) {
+            this.action = action;
+            listeners.add(listener);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.vera;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by morfeusys on 19.09.14.
+ */
+public class Controller {
+
+    private static final String TAG = "Controller";
+
+    private static final int CONCURRENCY = 4;
+
+    private static final String SWITCH_POWER = "urn:upnp-org:serviceId:SwitchPower1";
+
+    private final Transport mTransport;
+    private final boolean mOwnTransports;
+    private final ControllerLocator mLocator;
+    private final DeviceStateStore mStates = new DeviceStateStore();
+
+    private volatile List<Unit> mUnits = Collections.emptyList();
+    private volatile NameMatcher mMatcher;
+
+    /**
+     * The addresses of the controllers found last are kept in the file,
+     * which may be null.
+     */
+    public Controller(File addressCache) {
+        this(addressCache, ControllerLocator.PORT);
+    }
+
+    /**
+     * Talks to controllers on the given port, for stand-ins in tests.
+     */
+    Controller(File addressCache, int port) {
+        this(new HttpTransport(CONCURRENCY), addressCache, port, true);
+    }
+
+    /**
+     * All units are reached through the given transport, for stand-ins in
+     * tests. Each unit's long poll holds one of its connections, and the
+     * units split the rest for actions.
+     */
+    public Controller(Transport transport, File addressCache) {
+        this(transport, addressCache, ControllerLocator.PORT, false);
+    }
+
+    private Controller(Transport transport, File addressCache, int port, boolean ownTransports) {
+        mTransport = transport;
+        mOwnTransports = ownTransports;
+        mLocator = new ControllerLocator(addressCache, transport, port);
+    }
+
+    /**
+     * Finds the controller units and loads their devices in parallel.
+     * Returns false if there are none.
+     */
+    public boolean initialize() {
+        List<String> addresses;
+        try {
+            addresses = mLocator.locateAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (addresses.isEmpty()) return false;
+        List<Unit> units = new ArrayList<Unit>(addresses.size());
+        // every unit holds a connection for its long poll, actions get what's left of the pool
+        int parallelism = mOwnTransports ? CONCURRENCY - 1 : (mTransport.getConcurrency() - addresses.size()) / addresses.size();
+        if (parallelism < 1) {
+            Logger.getLogger(TAG).log(Level.WARNING, "Transport is too small for " + addresses.size() + " units, polls will hold up actions");
+            parallelism = 1;
+        }
+        for (String address : addresses) {
+            // with a pool of its own, a busy unit doesn't hold up the others
+            Transport transport = mOwnTransports ? new HttpTransport(CONCURRENCY) : mTransport;
+            units.add(new Unit(units.size(), mLocator.getBaseUrl(address), transport, parallelism));
+        }
+        load(units);
+        for (Unit unit : units) {
+            unit.registry.start();
+        }
+        mUnits = Collections.unmodifiableList(units);
+        return true;
+    }
+
+    public void release() {
+        for (Unit unit : mUnits) {
+            unit.registry.stop();
+            if (unit.transport != mTransport) unit.transport.shutdown();
+        }
+        mTransport.shutdown();
+    }
+
+    /**
+     * Latencies of the requests of a type to all units.
+     */
+    public LatencyHistogram getLatency(String type) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.merge(mTransport.getLatency(type));
+        for (Unit unit : mUnits) {
+            if (unit.transport != mTransport) histogram.merge(unit.transport.getLatency(type));
+        }
+        return histogram;
+    }
+
+    public DeviceStateStore getStates() {
+        return mStates;
+    }
+
+    /**
+     * Devices named in the string, resolved against the registry snapshots.
+     */
+    public List<Device> getDevices(String str) {
+        List<Unit> units = mUnits;
+        if (units.isEmpty()) return Collections.emptyList();
+        NameMatcher matcher = mMatcher;
+        // versions only grow, so their sum changes whenever a unit's devices do
+        int version = 0;
+        for (Unit unit : units) {
+            version += unit.registry.getVersion();
+        }
+        if (matcher == null || matcher.getVersion() != version) {
+            matcher = new NameMatcher(getDevices(units), version);
+            mMatcher = matcher;
+        }
+        return matcher.match(str);
+    }
+
+    /**
+     * Devices of all units, the longest names first.
+     */
+    public List<Device> getDevices() {
+        return getDevices(mUnits);
+    }
+
+    private static List<Device> getDevices(List<Unit> units) {
+        if (units.isEmpty()) return Collections.emptyList();
+        if (units.size() == 1) return units.get(0).registry.getDevices();
+        List<Device> devices = new ArrayList<Device>();
+        for (Unit unit : units) {
+            devices.addAll(unit.registry.getDevices());
+        }
+        Collections.sort(devices);
+        return Collections.unmodifiableList(devices);
+    }
+
+    public String process(Device device) {
+        return process(device, null);
+    }
+
+    /**
+     * Returns the value of a sensor, or toggles a switch in the background
+     * and reports to the listener, which may be null.
+     */
+    public String process(Device device, ActionDispatcher.Listener listener) {
+        if (device.category.field != null) {
+            return getTemperature(device);
+        }
+        toggle(device, listener);
+        return null;
+    }
+
+    private String getTemperature(Device device) {
+        Unit unit = getUnit(device);
+        if (unit == null) return null;
+        DeviceTable table = unit.registry.getTable();
+        int row = table.indexOf(device.id);
+        if (row < 0) return null;
+        float temperature = table.getTemperature(row);
+        if (Float.isNaN(temperature)) return null;
+        return temperature == (int) temperature ? String.valueOf((int) temperature) : String.valueOf(temperature);
+    }
+
+    private void toggle(Device device, final ActionDispatcher.Listener listener) {
+        Unit unit = getUnit(device);
+        if (unit == null) return;
+        // a toggle dispatched a moment ago is what the device is about to be
+        String status = "1".equals(mStates.getStatus(device)) ? "0" : "1";
+        ActionDispatcher.Action action = new ActionDispatcher.Action(device, SWITCH_POWER, "SetTarget", "newTargetValue", status);
+        mStates.onDispatched(action);
+        unit.dispatcher.dispatch(action, new ActionDispatcher.Listener() {
+            @Override
+            public void onComplete(ActionDispatcher.Action action) {
+                mStates.onAccepted(action);
+                if (listener != null) listener.onComplete(action);
+            }
+
+            @Override
+            public void onFailure(ActionDispatcher.Action action, Exception e) {
+                Logger.getLogger(TAG).log(Level.SEVERE, "Can't execute " + action, e);
+                mStates.onFailed(action);
+                if (listener != null) listener.onFailure(action, e);
+            }
+        });
+    }
+
+    private Unit getUnit(Device device) {
+        List<Unit> units = mUnits;
+        return device.unit < units.size() ? units.get(device.unit) : null;
+    }
+
+    /**
+     * Blocks until every unit has fetched its devices or failed to.
+     */
+    private static void load(List<Unit> units) {
+        if (units.size() == 1) {
+            units.get(0).registry.load();
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(units.size());
+        try {
+            List<Future<Boolean>> loads = new ArrayList<Future<Boolean>>(units.size());
+            for (final Unit unit : units) {
+                loads.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return unit.registry.load();
+                    }
+                }));
+            }
+            for (Future<Boolean> load : loads) {
+                try {
+                    load.get();
+                } catch (ExecutionException e) {
+                    Logger.getLogger(TAG).log(Level.SEVERE, "Can't load devices", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A controller unit, with its own registry and dispatcher so that units
+     * don't wait for each other.
+     */
+    private class Unit {
+
+        final Transport transport;
+        final DeviceRegistry registry;
+        final ActionDispatcher dispatcher;
+
+        Unit(int index, Url baseUrl, Transport transport, int parallelism) {
+            this.transport = transport;
+            registry = new DeviceRegistry(index, baseUrl, transport);
+            registry.addListener(new DeviceRegistry.Listener() {
+                @Override
+                public void onDevicesChanged(DeviceTable table, List<Device> devices) {
+                    mStates.reconcile(table, devices);
+                }
+            });
+            dispatcher = new ActionDispatcher(baseUrl, transport, parallelism);
+        }
+    }
+}
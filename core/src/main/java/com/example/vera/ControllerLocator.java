@@ -0,0 +1,357 @@
+package com.example.vera;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the addresses of the controllers on the local network.
+ *
+ * The addresses found last time are tried first. If one of them doesn't
+ * answer, an SSDP search and a scan of the local /24 subnets run in
+ * parallel, collecting the hosts that answer as controllers for a moment
+ * after the first one does. The remote detection service is only asked when
+ * the LAN has nothing, since it needs internet access and is slower. The
+ * addresses found are saved for the next start.
+ */
+public class ControllerLocator {
+
+    private static final String TAG = "ControllerLocator";
+
+    public static final int PORT = 3480;
+
+    private static final String SSDP_ADDRESS = "239.255.255.250";
+    private static final int SSDP_PORT = 1900;
+    private static final String SEARCH_TARGET = "urn:schemas-micasaverde-com:device:HomeAutomationGateway:1";
+
+    private static final int PROBE_TIMEOUT = 1000;
+    private static final int SCAN_TIMEOUT = 300;
+    private static final int SCAN_THREADS = 32;
+    private static final int LAN_TIMEOUT = 4000;
+    // other units answer at about the same time as the first one
+    private static final int LAN_GRACE = 1000;
+    private static final int DETECT_TIMEOUT = 10000;
+
+    private static final String NONE = "";
+
+    /**
+     * Reads the internal addresses of the units the detection service lists.
+     */
+    private static final Transport.Parser<List<String>> UNITS = new Transport.Parser<List<String>>() {
+        @Override
+        public List<String> parse(InputStream in) throws IOException {
+            List<String> addresses = new ArrayList<String>();
+            JsonPullParser parser = new JsonPullParser(new InputStreamReader(in, "UTF-8"));
+            parser.beginArray();
+            while (parser.hasNext()) {
+                parser.beginObject();
+                while (parser.hasNext()) {
+                    if (!parser.nextName().equals("InternalIP")) {
+                        parser.skipValue();
+                        continue;
+                    }
+                    String address = parser.nextValue();
+                    if (address != null && address.length() > 0 && !addresses.contains(address)) {
+                        addresses.add(address);
+                    }
+                }
+                parser.endObject();
+            }
+            parser.endArray();
+            return addresses;
+        }
+    };
+
+    private final Url mDetectUrl = Url.parse("http://cp.mios.com/detect_unit.php");
+    private final File mCache;
+    private final Transport mTransport;
+    private final int mPort;
+
+    public ControllerLocator(File cache, Transport transport) {
+        this(cache, transport, PORT);
+    }
+
+    /**
+     * Looks for controllers on the given port, for stand-ins in tests.
+     */
+    public ControllerLocator(File cache, Transport transport, int port) {
+        mCache = cache;
+        mTransport = transport;
+        mPort = port;
+    }
+
+    /**
+     * Returns the address of a controller, or null if none is found.
+     */
+    public String locate() throws InterruptedException {
+        List<String> addresses = locateAll();
+        return addresses.isEmpty() ? null : addresses.get(0);
+    }
+
+    /**
+     * Returns the addresses of all controllers found, which may be none.
+     */
+    public List<String> locateAll() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<String> addresses = load();
+        String source = "cache";
+        if (addresses.isEmpty() || !probeAll(addresses)) {
+            addresses = searchLan();
+            source = "lan";
+        }
+        if (addresses.isEmpty()) {
+            addresses = detectRemote();
+            source = "remote";
+        }
+        Logger.getLogger(TAG).log(Level.FINE, "Controllers " + addresses + " from " + source + " in " + (System.currentTimeMillis() - start) + " ms");
+        if (!addresses.isEmpty()) {
+            save(addresses);
+        }
+        return addresses;
+    }
+
+    public Url getBaseUrl(String address) {
+        return Url.parse("http://" + address + ":" + mPort + "/data_request");
+    }
+
+    /**
+     * Returns true if a controller answers at the address.
+     */
+    boolean probe(String address) throws InterruptedException {
+        Url url = getBaseUrl(address).buildUpon().appendQueryParameter("id", "alive").build();
+        try {
+            String body = mTransport.get(url, PROBE_TIMEOUT, PROBE_TIMEOUT, Transport.TEXT, null).get();
+            return body != null && body.trim().equals("OK");
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if controllers answer at all of the addresses.
+     */
+    private boolean probeAll(List<String> addresses) throws InterruptedException {
+        if (addresses.size() == 1) return probe(addresses.get(0));
+        List<Future<String>> probes = new ArrayList<Future<String>>(addresses.size());
+        for (String address : addresses) {
+            Url url = getBaseUrl(address).buildUpon().appendQueryParameter("id", "alive").build();
+            probes.add(mTransport.get(url, PROBE_TIMEOUT, PROBE_TIMEOUT, Transport.TEXT, null));
+        }
+        boolean alive = true;
+        for (Future<String> probe : probes) {
+            try {
+                String body = probe.get();
+                alive &= body != null && body.trim().equals("OK");
+            } catch (ExecutionException e) {
+                alive = false;
+            }
+        }
+        return alive;
+    }
+
+    private List<String> searchLan() throws InterruptedException {
+        final BlockingQueue<String> found = new LinkedBlockingQueue<String>();
+        final Set<String> probed = Collections.synchronizedSet(new LinkedHashSet<String>());
+        List<String> hosts = getSubnetHosts();
+        ExecutorService executor = Executors.newFixedThreadPool(SCAN_THREADS);
+        final int tasks = hosts.size() + 1;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    searchSsdp(found, probed);
+                    found.offer(NONE);
+                }
+            });
+            for (final String host : hosts) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isOpen(host) && probed.add(host)) {
+                            offer(host, found);
+                        }
+                        found.offer(NONE);
+                    }
+                });
+            }
+            // every task offers NONE when it's done, so the search ends as soon as everything did
+            List<String> addresses = new ArrayList<String>();
+            long deadline = System.currentTimeMillis() + LAN_TIMEOUT;
+            int done = 0;
+            while (done < tasks) {
+                String address = found.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (address == null) break;
+                if (address == NONE) {
+                    done++;
+                } else {
+                    if (addresses.isEmpty()) {
+                        deadline = Math.min(deadline, System.currentTimeMillis() + LAN_GRACE);
+                    }
+                    addresses.add(address);
+                }
+            }
+            return addresses;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void searchSsdp(BlockingQueue<String> found, Set<String> probed) {
+        DatagramSocket socket = null;
+        try {
+            socket = new DatagramSocket();
+            socket.setSoTimeout(LAN_TIMEOUT);
+            byte[] request = ("M-SEARCH * HTTP/1.1\r\n"
+                    + "HOST: " + SSDP_ADDRESS + ":" + SSDP_PORT + "\r\n"
+                    + "MAN: \"ssdp:discover\"\r\n"
+                    + "MX: 2\r\n"
+                    + "ST: " + SEARCH_TARGET + "\r\n\r\n").getBytes("US-ASCII");
+            socket.send(new DatagramPacket(request, request.length, InetAddress.getByName(SSDP_ADDRESS), SSDP_PORT));
+            byte[] buffer = new byte[1024];
+            while (!Thread.currentThread().isInterrupted()) {
+                DatagramPacket response = new DatagramPacket(buffer, buffer.length);
+                socket.receive(response);
+                String host = response.getAddress().getHostAddress();
+                if (probed.add(host)) {
+                    offer(host, found);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            // no more answers
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "SSDP search failed", e);
+        } finally {
+            if (socket != null) socket.close();
+        }
+    }
+
+    private void offer(String host, BlockingQueue<String> found) {
+        try {
+            if (probe(host)) found.offer(host);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isOpen(String host) {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, mPort), SCAN_TIMEOUT);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * Other hosts of the /24 subnets of local IPv4 addresses.
+     */
+    private static List<String> getSubnetHosts() {
+        List<String> hosts = new ArrayList<String>();
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                Enumeration<InetAddress> addresses = interfaces.nextElement().getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    InetAddress address = addresses.nextElement();
+                    if (!(address instanceof Inet4Address) || !address.isSiteLocalAddress()) continue;
+                    byte[] bytes = address.getAddress();
+                    String prefix = (bytes[0] & 0xFF) + "." + (bytes[1] & 0xFF) + "." + (bytes[2] & 0xFF) + ".";
+                    for (int i = 1; i < 255; i++) {
+                        if (i != (bytes[3] & 0xFF)) hosts.add(prefix + i);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "Can't list network interfaces", e);
+        }
+        return hosts;
+    }
+
+    private List<String> detectRemote() throws InterruptedException {
+        try {
+            List<String> addresses = mTransport.get(mDetectUrl, DETECT_TIMEOUT, DETECT_TIMEOUT, UNITS, null).get();
+            if (addresses != null) return addresses;
+        } catch (ExecutionException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "Can't execute [" + mDetectUrl + "]", e.getCause());
+        }
+        return new ArrayList<String>();
+    }
+
+    private List<String> load() {
+        List<String> addresses = new ArrayList<String>();
+        if (mCache == null || !mCache.exists()) return addresses;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mCache), "UTF-8"));
+            String address;
+            while ((address = reader.readLine()) != null) {
+                if (address.length() > 0) addresses.add(address);
+            }
+            return addresses;
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "Can't read cache", e);
+            return new ArrayList<String>();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void save(List<String> addresses) {
+        if (mCache == null || addresses.equals(load())) return;
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(mCache), "UTF-8");
+            try {
+                for (String address : addresses) {
+                    writer.write(address);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "Can't write cache", e);
+        }
+    }
+}
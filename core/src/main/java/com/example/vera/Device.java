@@ -0,0 +1,77 @@
+package com.example.vera;
+
+/**
+ * Created by morfeusys on 19.09.14.
+ */
+public class Device implements Comparable<Device> {
+
+    public static enum Category {
+        Switch, Dimmer, Thermostat("temperature");
+
+        public final String field;
+
+        Category(String field) {
+            this.field = field;
+        }
+
+        Category() {
+            this(null);
+        }
+    }
+
+    /**
+     * Index of the controller unit the device belongs to, ids are only
+     * unique within a unit.
+     */
+    public final int unit;
+    public final int id;
+    public final String name;
+    public final Category category;
+
+    /**
+     * Fields of sdata devices that are kept, the others are skipped while
+     * parsing.
+     */
+    static final String[] FIELDS = {"id", "name", "category", "status", "level", "temperature"};
+
+    public Device(int id, String name, Category category) {
+        this(0, id, name, category);
+    }
+
+    public Device(int unit, int id, String name, Category category) {
+        this.unit = unit;
+        this.id = id;
+        this.name = name;
+        this.category = category;
+    }
+
+    @Override
+    public int compareTo(Device another) {
+        return another.name.length() - this.name.length();
+    }
+
+    /**
+     * Devices are handles to rows of a {@link DeviceTable}, made on demand,
+     * so they are equal if their units and ids are.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Device && ((Device) o).id == id && ((Device) o).unit == unit;
+    }
+
+    @Override
+    public int hashCode() {
+        return unit * 31 + id;
+    }
+
+    /**
+     * Returns the field name if it's one of {@link #FIELDS}, the same
+     * instance each time.
+     */
+    static String field(String name) {
+        for (String field : FIELDS) {
+            if (field.equals(name)) return field;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.vera;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Devices of a controller kept in memory.
+ *
+ * The full {@code sdata} is fetched once, after that a background thread
+ * long-polls the controller with the {@code loadtime} and {@code dataversion}
+ * of the last response, so it only receives the devices that changed. The
+ * devices are published as an immutable snapshot, which is what commands
+ * are resolved against without going to the network.
+ */
+public class DeviceRegistry {
+
+    private static final String TAG = "DeviceRegistry";
+
+    public interface Listener {
+
+        /**
+         * Called on the sync thread with the new table and the devices that
+         * were added or changed in it.
+         */
+        void onDevicesChanged(DeviceTable table, List<Device> devices);
+    }
+
+    /**
+     * Seconds the controller holds a poll when nothing changes.
+     */
+    private static final int TIMEOUT = 60;
+
+    /**
+     * Milliseconds the controller waits to batch changes into one response.
+     */
+    private static final int MINIMUM_DELAY = 200;
+
+    private static final long RETRY_DELAY = 5000;
+
+    private static final int CONNECT_TIMEOUT = 3000;
+    private static final int READ_TIMEOUT = 15000;
+
+    private final int mUnit;
+    private final Url mBaseUrl;
+    private final Transport mTransport;
+    private final SdataParser mParser;
+
+    // guarded by this
+    private final Map<Integer, String> mCategories = new HashMap<Integer, String>();
+    private long mLoadTime;
+    private long mDataVersion;
+
+    private volatile DeviceTable mTable;
+    private volatile int mVersion;
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+
+    private volatile boolean mRunning;
+    private volatile Future<?> mRequest;
+    private Thread mThread;
+
+    public DeviceRegistry(Url baseUrl, Transport transport) {
+        this(0, baseUrl, transport);
+    }
+
+    /**
+     * Devices are tagged with the index of the unit. The table keeps the
+     * extra fields of devices, which are otherwise skipped.
+     */
+    public DeviceRegistry(int unit, Url baseUrl, Transport transport, String... extraFields) {
+        mUnit = unit;
+        mTable = new DeviceTable.Builder(unit, null).build();
+        mBaseUrl = baseUrl;
+        mTransport = transport;
+        mParser = new SdataParser(extraFields);
+    }
+
+    /**
+     * Fetches all devices. Returns false if the controller can't be reached,
+     * the sync thread then keeps trying.
+     */
+    public boolean load() {
+        return poll(false);
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Starts applying changes in the background.
+     */
+    public synchronized void start() {
+        if (mThread != null) return;
+        mRunning = true;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, TAG);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public synchronized void stop() {
+        if (mThread == null) return;
+        mRunning = false;
+        Future<?> request = mRequest;
+        if (request != null) {
+            request.cancel(true);
+        }
+        mThread.interrupt();
+        mThread = null;
+    }
+
+    /**
+     * Current devices, the longest names first.
+     */
+    public List<Device> getDevices() {
+        return mTable.getDevices();
+    }
+
+    public DeviceTable getTable() {
+        return mTable;
+    }
+
+    /**
+     * Changes every time the devices do.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    private void sync() {
+        while (mRunning) {
+            if (!poll(true) && mRunning) {
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean poll(boolean wait) {
+        Url.Builder builder = mBaseUrl.buildUpon()
+                .appendQueryParameter("id", "sdata")
+                .appendQueryParameter("output_format", "json");
+        if (wait) {
+            long loadTime;
+            long dataVersion;
+            synchronized (this) {
+                loadTime = mLoadTime;
+                dataVersion = mDataVersion;
+            }
+            builder.appendQueryParameter("loadtime", String.valueOf(loadTime))
+                    .appendQueryParameter("dataversion", String.valueOf(dataVersion))
+                    .appendQueryParameter("timeout", String.valueOf(TIMEOUT))
+                    .appendQueryParameter("minimumdelay", String.valueOf(MINIMUM_DELAY));
+        }
+        Sdata sdata = get(builder.build(), wait ? READ_TIMEOUT + TIMEOUT * 1000 : READ_TIMEOUT);
+        if (sdata == null) return false;
+        List<Device> changed = apply(sdata);
+        if (!changed.isEmpty()) {
+            DeviceTable table = mTable;
+            for (Listener listener : mListeners) {
+                listener.onDevicesChanged(table, changed);
+            }
+        }
+        return true;
+    }
+
+    private synchronized List<Device> apply(Sdata sdata) {
+        mCategories.putAll(sdata.categories);
+        // the controller answers in full after a restart, and when asked without versions
+        DeviceTable.Builder builder = new DeviceTable.Builder(mUnit, sdata.full ? null : mTable);
+        List<Device> changed = new ArrayList<Device>(sdata.devices.size());
+        for (Map<String, String> fields : sdata.devices) {
+            Device device = builder.put(fields, mCategories);
+            if (device != null) {
+                changed.add(device);
+            }
+        }
+        if (sdata.loadTime >= 0) mLoadTime = sdata.loadTime;
+        if (sdata.dataVersion >= 0) mDataVersion = sdata.dataVersion;
+        if (sdata.full || !changed.isEmpty()) {
+            mTable = builder.build();
+            mVersion++;
+        }
+        return changed;
+    }
+
+    private Sdata get(Url url, int readTimeout) {
+        Future<Sdata> request = mTransport.get(url, CONNECT_TIMEOUT, readTimeout, mParser, null);
+        mRequest = request;
+        try {
+            return request.get();
+        } catch (ExecutionException e) {
+            Logger.getLogger(TAG).log(Level.SEVERE, "Can't execute [" + url + "]", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            request.cancel(true);
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } finally {
+            mRequest = null;
+        }
+    }
+}
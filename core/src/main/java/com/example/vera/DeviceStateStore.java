@@ -0,0 +1,244 @@
+package com.example.vera;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Switch states of devices, including changes that are on their way.
+ *
+ * A target is applied as soon as its action is dispatched, so the next
+ * command sees it without asking the controller. The controller's own state
+ * comes in with registry updates and settles pending targets: a matching
+ * state confirms them, a different one reported after the controller has
+ * accepted the action replaces them and is reported as a divergence. A
+ * target the controller accepted but no update confirmed in time expires
+ * the same way, since an update may never come. An action that fails is
+ * rolled back.
+ */
+public class DeviceStateStore {
+
+    /**
+     * How long after the controller accepted an action its state may still
+     * be the old one.
+     */
+    private static final long SETTLE_TIME = 5000;
+
+    public interface Listener {
+
+        /**
+         * The controller reports a different state than the one expected.
+         */
+        void onDivergence(Device device, String expected, String reported);
+
+        /**
+         * An action failed and the device is back to the given state.
+         */
+        void onRollback(Device device, String target, String state);
+    }
+
+    // devices of different units may share ids, handles are keyed by both
+    private final Map<Device, State> mStates = new HashMap<Device, State>();
+    private final Map<Integer, DeviceTable> mTables = new HashMap<Integer, DeviceTable>();
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    private final long mSettleTime;
+
+    public DeviceStateStore() {
+        this(SETTLE_TIME);
+    }
+
+    /**
+     * Gives the controller the milliseconds to follow, for tests.
+     */
+    DeviceStateStore(long settleTime) {
+        mSettleTime = settleTime;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * The state the device is in or about to be in.
+     */
+    public String getStatus(Device device) {
+        Divergence divergence;
+        String status;
+        synchronized (this) {
+            State state = mStates.get(device);
+            if (state == null) return getReported(device);
+            divergence = expire(device, state, System.currentTimeMillis());
+            status = state.pending.isEmpty() ? state.reported : state.pending.get(state.pending.size() - 1).target;
+        }
+        if (divergence != null) notifyDivergence(divergence);
+        return status;
+    }
+
+    public boolean isPending(Device device) {
+        Divergence divergence;
+        boolean pending;
+        synchronized (this) {
+            State state = mStates.get(device);
+            if (state == null) return false;
+            divergence = expire(device, state, System.currentTimeMillis());
+            pending = !state.pending.isEmpty();
+        }
+        if (divergence != null) notifyDivergence(divergence);
+        return pending;
+    }
+
+    public synchronized void onDispatched(ActionDispatcher.Action action) {
+        State state = getState(action.device);
+        state.pending.add(new Pending(action));
+    }
+
+    /**
+     * The controller has accepted the action, its state should follow.
+     */
+    public synchronized void onAccepted(ActionDispatcher.Action action) {
+        State state = mStates.get(action.device);
+        if (state == null) return;
+        long now = System.currentTimeMillis();
+        for (Pending pending : state.pending) {
+            // merged actions are accepted together with the one that was sent
+            pending.accepted = now;
+            if (pending.action == action) break;
+        }
+    }
+
+    public void onFailed(ActionDispatcher.Action action) {
+        String status;
+        synchronized (this) {
+            State state = mStates.get(action.device);
+            if (state == null || !rollback(state, action)) return;
+            status = state.pending.isEmpty() ? state.reported : state.pending.get(state.pending.size() - 1).target;
+        }
+        for (Listener listener : mListeners) {
+            listener.onRollback(action.device, action.value, status);
+        }
+    }
+
+    /**
+     * Settles pending targets with the state the controller reports.
+     */
+    public void reconcile(DeviceTable table, List<Device> devices) {
+        List<Divergence> divergences = null;
+        synchronized (this) {
+            mTables.put(table.getUnit(), table);
+            long now = System.currentTimeMillis();
+            for (Device device : devices) {
+                State state = mStates.get(device);
+                if (state == null) continue;
+                String reported = getReported(device);
+                state.reported = reported;
+                if (state.pending.isEmpty()) continue;
+                Pending last = state.pending.get(state.pending.size() - 1);
+                if (last.target.equals(reported)) {
+                    state.pending.clear();
+                } else if (last.accepted > 0 && now - last.accepted > mSettleTime) {
+                    if (divergences == null) divergences = new ArrayList<Divergence>();
+                    divergences.add(new Divergence(device, last.target, reported));
+                    state.pending.clear();
+                }
+            }
+        }
+        if (divergences == null) return;
+        for (Divergence divergence : divergences) {
+            notifyDivergence(divergence);
+        }
+    }
+
+    private void notifyDivergence(Divergence divergence) {
+        for (Listener listener : mListeners) {
+            listener.onDivergence(divergence.device, divergence.expected, divergence.reported);
+        }
+    }
+
+    /**
+     * Drops the pending targets if the last one was accepted longer than the
+     * settle time ago, falling back to the state last reported. Returns the
+     * divergence if that's not the target.
+     */
+    private Divergence expire(Device device, State state, long now) {
+        if (state.pending.isEmpty()) return null;
+        Pending last = state.pending.get(state.pending.size() - 1);
+        if (last.accepted == 0 || now - last.accepted <= mSettleTime) return null;
+        state.reported = getReported(device);
+        state.pending.clear();
+        return last.target.equals(state.reported) ? null : new Divergence(device, last.target, state.reported);
+    }
+
+    private State getState(Device device) {
+        State state = mStates.get(device);
+        if (state == null) {
+            state = new State(getReported(device));
+            mStates.put(device, state);
+        }
+        return state;
+    }
+
+    private String getReported(Device device) {
+        DeviceTable table = mTables.get(device.unit);
+        int row = table != null ? table.indexOf(device.id) : -1;
+        if (row < 0) return null;
+        byte status = table.getStatus(row);
+        return status != DeviceTable.UNKNOWN ? String.valueOf(status) : null;
+    }
+
+    /**
+     * Removes the action with those merged into it, which were never sent.
+     */
+    private static boolean rollback(State state, ActionDispatcher.Action action) {
+        for (int i = 0; i < state.pending.size(); i++) {
+            if (state.pending.get(i).action != action) continue;
+            for (int j = i; j >= 0; j--) {
+                if (j == i || state.pending.get(j).accepted == 0) {
+                    state.pending.remove(j);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static class State {
+
+        String reported;
+        final List<Pending> pending = new ArrayList<Pending>(2);
+
+        State(String reported) {
+            this.reported = reported;
+        }
+    }
+
+    private static class Divergence {
+
+        final Device device;
+        final String expected;
+        final String reported;
+
+        Divergence(Device device, String expected, String reported) {
+            this.device = device;
+            this.expected = expected;
+            this.reported = reported;
+        }
+    }
+
+    private static class Pending {
+
+        final ActionDispatcher.Action action;
+        final String target;
+        long accepted;
+
+        Pending(ActionDispatcher.Action action) {
+            this.action = action;
+            this.target = action.value;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.vera;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Immutable snapshot of the devices of a controller in parallel arrays.
+ *
+ * There is a row per device, ordered by id, and the fields commands use are
+ * kept as primitives: a byte category and status, an int dimmer level and a
+ * float temperature, with names interned. Other fields are only kept if they
+ * were asked for, in a side map. {@link Device} objects are made on demand as
+ * handles to a row, so a snapshot of thousands of devices is a handful of
+ * arrays.
+ */
+public final class DeviceTable {
+
+    public static final byte UNKNOWN = -1;
+
+    private static final Device.Category[] CATEGORIES = Device.Category.values();
+
+    private final int mUnit;
+    private final int mSize;
+    private final int[] mIds;
+    private final String[] mNames;
+    private final byte[] mCategories;
+    private final byte[] mStatuses;
+    private final int[] mLevels;
+    private final float[] mTemperatures;
+    // rows by name length, the longest first
+    private final int[] mOrder;
+    // fields outside of Device.FIELDS by id, null if none were asked for
+    private final Map<Integer, Map<String, String>> mExtras;
+
+    private final List<Device> mDevices = new DeviceList();
+
+    private DeviceTable(Builder builder) {
+        mUnit = builder.mUnit;
+        mSize = builder.mSize;
+        // rows are sorted by id so that lookups are a binary search
+        long[] keys = new long[mSize];
+        for (int row = 0; row < mSize; row++) {
+            keys[row] = ((long) builder.mIds[row] << 32) | row;
+        }
+        Arrays.sort(keys);
+        mIds = new int[mSize];
+        mNames = new String[mSize];
+        mCategories = new byte[mSize];
+        mStatuses = new byte[mSize];
+        mLevels = new int[mSize];
+        mTemperatures = new float[mSize];
+        for (int row = 0; row < mSize; row++) {
+            int from = (int) keys[row];
+            mIds[row] = builder.mIds[from];
+            mNames[row] = builder.mNames[from];
+            mCategories[row] = builder.mCategories[from];
+            mStatuses[row] = builder.mStatuses[from];
+            mLevels[row] = builder.mLevels[from];
+            mTemperatures[row] = builder.mTemperatures[from];
+        }
+        for (int row = 0; row < mSize; row++) {
+            keys[row] = ((long) -mNames[row].length() << 32) | row;
+        }
+        Arrays.sort(keys);
+        mOrder = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            mOrder[i] = (int) keys[i];
+        }
+        mExtras = builder.mExtras;
+    }
+
+    /**
+     * Index of the controller unit the devices belong to.
+     */
+    public int getUnit() {
+        return mUnit;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the row of the device, or -1 if there is no such device.
+     */
+    public int indexOf(int id) {
+        int row = Arrays.binarySearch(mIds, id);
+        return row >= 0 ? row : -1;
+    }
+
+    public int getId(int row) {
+        return mIds[row];
+    }
+
+    public String getName(int row) {
+        return mNames[row];
+    }
+
+    public Device.Category getCategory(int row) {
+        return CATEGORIES[mCategories[row]];
+    }
+
+    /**
+     * Returns 0 or 1 for switches, {@link #UNKNOWN} if the controller didn't
+     * say.
+     */
+    public byte getStatus(int row) {
+        return mStatuses[row];
+    }
+
+    /**
+     * Returns the dimmer level, or -1 if unknown.
+     */
+    public int getLevel(int row) {
+        return mLevels[row];
+    }
+
+    /**
+     * Returns the temperature, or NaN if unknown.
+     */
+    public float getTemperature(int row) {
+        return mTemperatures[row];
+    }
+
+    /**
+     * Returns a field that was asked for in addition to {@link Device#FIELDS}.
+     */
+    public String getExtra(int row, String field) {
+        if (mExtras == null) return null;
+        Map<String, String> extras = mExtras.get(mIds[row]);
+        return extras != null ? extras.get(field) : null;
+    }
+
+    public Device getDevice(int row) {
+        return new Device(mUnit, mIds[row], mNames[row], CATEGORIES[mCategories[row]]);
+    }
+
+    /**
+     * Devices of the table, the longest names first.
+     */
+    public List<Device> getDevices() {
+        return mDevices;
+    }
+
+    private class DeviceList extends AbstractList<Device> implements RandomAccess {
+
+        @Override
+        public Device get(int index) {
+            if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException(String.valueOf(index));
+            return getDevice(mOrder[index]);
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+    }
+
+    /**
+     * Applies sdata entries to a copy of a table.
+     */
+    static final class Builder {
+
+        private final int mUnit;
+        private final DeviceTable mBase;
+        // rows added to the base, by id
+        private final Map<Integer, Integer> mAdded = new HashMap<Integer, Integer>();
+
+        private int mSize;
+        private int[] mIds;
+        private String[] mNames;
+        private byte[] mCategories;
+        private byte[] mStatuses;
+        private int[] mLevels;
+        private float[] mTemperatures;
+        private Map<Integer, Map<String, String>> mExtras;
+
+        /**
+         * Starts from the rows of the base, or from nothing if it's null.
+         */
+        Builder(int unit, DeviceTable base) {
+            mUnit = unit;
+            mBase = base;
+            int size = base != null ? base.mSize : 0;
+            int capacity = Math.max(16, size);
+            mIds = new int[capacity];
+            mNames = new String[capacity];
+            mCategories = new byte[capacity];
+            mStatuses = new byte[capacity];
+            mLevels = new int[capacity];
+            mTemperatures = new float[capacity];
+            if (base == null) return;
+            System.arraycopy(base.mIds, 0, mIds, 0, size);
+            System.arraycopy(base.mNames, 0, mNames, 0, size);
+            System.arraycopy(base.mCategories, 0, mCategories, 0, size);
+            System.arraycopy(base.mStatuses, 0, mStatuses, 0, size);
+            System.arraycopy(base.mLevels, 0, mLevels, 0, size);
+            System.arraycopy(base.mTemperatures, 0, mTemperatures, 0, size);
+            mSize = size;
+            if (base.mExtras != null) {
+                mExtras = new HashMap<Integer, Map<String, String>>(base.mExtras);
+            }
+        }
+
+        /**
+         * Adds a device or updates it with the fields of a partial entry.
+         * Returns the device, or null if it's of a category commands don't
+         * handle.
+         */
+        Device put(Map<String, String> fields, Map<Integer, String> categories) {
+            int id = parseInt(fields.get("id"), -1);
+            if (id < 0) return null;
+            int row = mBase != null ? mBase.indexOf(id) : -1;
+            if (row < 0) {
+                Integer added = mAdded.get(id);
+                if (added != null) row = added;
+            }
+            if (row < 0) {
+                byte category = parseCategory(fields.get("category"), categories);
+                String name = fields.get("name");
+                if (category == UNKNOWN || name == null) return null;
+                row = add(id, category);
+                mNames[row] = name.toLowerCase().intern();
+            }
+            // the parser hands out the instances of Device.FIELDS as names
+            for (Map.Entry<String, String> entry : fields.entrySet()) {
+                String field = entry.getKey();
+                String value = entry.getValue();
+                if (field == "name") {
+                    if (value != null) mNames[row] = value.toLowerCase().intern();
+                } else if (field == "status") {
+                    mStatuses[row] = (byte) parseInt(value, UNKNOWN);
+                } else if (field == "level") {
+                    mLevels[row] = parseInt(value, -1);
+                } else if (field == "temperature") {
+                    mTemperatures[row] = parseFloat(value);
+                } else if (field != "id" && field != "category") {
+                    putExtra(id, field, value);
+                }
+            }
+            return new Device(mUnit, id, mNames[row], CATEGORIES[mCategories[row]]);
+        }
+
+        DeviceTable build() {
+            return new DeviceTable(this);
+        }
+
+        private int add(int id, byte category) {
+            if (mSize == mIds.length) grow();
+            int row = mSize++;
+            mIds[row] = id;
+            mCategories[row] = category;
+            mStatuses[row] = UNKNOWN;
+            mLevels[row] = -1;
+            mTemperatures[row] = Float.NaN;
+            mAdded.put(id, row);
+            return row;
+        }
+
+        private void putExtra(int id, String field, String value) {
+            if (mExtras == null) mExtras = new HashMap<Integer, Map<String, String>>();
+            // maps may be shared with the base, so they are copied before a change
+            Map<String, String> old = mExtras.get(id);
+            Map<String, String> extras = old != null ? new HashMap<String, String>(old) : new HashMap<String, String>(4);
+            extras.put(field, value);
+            mExtras.put(id, extras);
+        }
+
+        private void grow() {
+            int capacity = mIds.length * 2;
+            int[] ids = new int[capacity];
+            String[] names = new String[capacity];
+            byte[] categories = new byte[capacity];
+            byte[] statuses = new byte[capacity];
+            int[] levels = new int[capacity];
+            float[] temperatures = new float[capacity];
+            System.arraycopy(mIds, 0, ids, 0, mSize);
+            System.arraycopy(mNames, 0, names, 0, mSize);
+            System.arraycopy(mCategories, 0, categories, 0, mSize);
+            System.arraycopy(mStatuses, 0, statuses, 0, mSize);
+            System.arraycopy(mLevels, 0, levels, 0, mSize);
+            System.arraycopy(mTemperatures, 0, temperatures, 0, mSize);
+            mIds = ids;
+            mNames = names;
+            mCategories = categories;
+            mStatuses = statuses;
+            mLevels = levels;
+            mTemperatures = temperatures;
+        }
+
+        private static byte parseCategory(String id, Map<Integer, String> categories) {
+            String name = categories.get(parseInt(id, -1));
+            if (name == null) return UNKNOWN;
+            for (Device.Category category : CATEGORIES) {
+                if (category.name().equals(name)) return (byte) category.ordinal();
+            }
+            return UNKNOWN;
+        }
+
+        private static int parseInt(String value, int defaultValue) {
+            if (value == null) return defaultValue;
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        private static float parseFloat(String value) {
+            if (value == null) return Float.NaN;
+            try {
+                return Float.parseFloat(value);
+            } catch (NumberFormatException e) {
+                return Float.NaN;
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.vera;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport over a pool of keep-alive connections.
+ *
+ * At most {@code concurrency} requests run at once, each on its own pooled
+ * connection, so a slow request only holds up the ones queued behind the
+ * whole pool instead of everything after it. Idle connections are kept open
+ * for reuse and closed after a while.
+ */
+public class HttpTransport implements Transport {
+
+    private static final String OTHER = "other";
+
+    private static final long IDLE_TIMEOUT = 30;
+
+    private final DefaultHttpClient mHttpClient;
+    private final ExecutorService mExecutor;
+    private final int mConcurrency;
+    private final ConcurrentMap<String, LatencyHistogram> mLatencies = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    public HttpTransport(int concurrency) {
+        HttpParams params = new BasicHttpParams();
+        ConnManagerParams.setMaxTotalConnections(params, concurrency);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(concurrency));
+        // checking idle connections before every request costs a read timeout
+        HttpConnectionParams.setStaleCheckingEnabled(params, false);
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        mHttpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+        mExecutor = Executors.newFixedThreadPool(concurrency);
+        mConcurrency = concurrency;
+    }
+
+    @Override
+    public <T> Future<T> get(Url url, int connectTimeout, int readTimeout, final Parser<T> parser, final Callback<T> callback) {
+        final String type = type(url);
+        final HttpGet get = new HttpGet(url.toString());
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+        HttpConnectionParams.setSoTimeout(params, readTimeout);
+        get.setParams(params);
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long start = System.nanoTime();
+                T body;
+                try {
+                    body = execute(get, parser);
+                } catch (Exception e) {
+                    get.abort();
+                    if (callback != null) callback.onFailure(e);
+                    throw e;
+                }
+                getLatency(type).record((System.nanoTime() - start) / 1000);
+                // outside the try, a callback that throws mustn't complete the request a second time
+                if (callback != null) callback.onResponse(body);
+                return body;
+            }
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                // blocking socket reads ignore interrupts
+                if (cancelled && mayInterruptIfRunning) get.abort();
+                return cancelled;
+            }
+        };
+        mExecutor.execute(task);
+        return task;
+    }
+
+    @Override
+    public LatencyHistogram getLatency(String type) {
+        LatencyHistogram histogram = mLatencies.get(type);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = mLatencies.putIfAbsent(type, created);
+            if (histogram == null) histogram = created;
+        }
+        return histogram;
+    }
+
+    @Override
+    public int getConcurrency() {
+        return mConcurrency;
+    }
+
+    @Override
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        mHttpClient.getConnectionManager().shutdown();
+    }
+
+    private <T> T execute(HttpGet get, Parser<T> parser) throws Exception {
+        // the controller drops idle connections on its own, don't let a request run into that
+        mHttpClient.getConnectionManager().closeIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS);
+        HttpResponse response = mHttpClient.execute(get);
+        HttpEntity entity = response.getEntity();
+        // the entity has to be read to the end for the connection to go back to the pool
+        try {
+            if (response.getStatusLine().getStatusCode() != 200) return null;
+            return parser.parse(entity != null ? entity.getContent() : new ByteArrayInputStream(new byte[0]));
+        } finally {
+            if (entity != null) entity.consumeContent();
+        }
+    }
+
+    private static String type(Url url) {
+        String type = url.getQueryParameter("id");
+        return type != null ? type : OTHER;
+    }
+}
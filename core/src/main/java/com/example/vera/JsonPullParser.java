@@ -0,0 +1,223 @@
+package com.example.vera;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser over a stream of JSON.
+ *
+ * Values are read one at a time straight from the stream, and the ones the
+ * caller skips are never turned into strings. Scalars are returned as their
+ * text, so {@code 1} and {@code "1"} read the same and {@code null} reads as
+ * null. Separators are not validated beyond what reading needs.
+ */
+public class JsonPullParser {
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[8192];
+    private final StringBuilder mString = new StringBuilder();
+    private int mPos;
+    private int mLimit;
+
+    public JsonPullParser(Reader reader) {
+        mReader = reader;
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * Returns true if the current object or array has more members.
+     */
+    public boolean hasNext() throws IOException {
+        int ch = peekSignificant();
+        while (ch == ',' || ch == ':') {
+            mPos++;
+            ch = peekSignificant();
+        }
+        return ch != '}' && ch != ']' && ch != -1;
+    }
+
+    /**
+     * Returns the next token character without consuming it: '{', '[', '"'
+     * or the first character of a literal, -1 at the end of the input.
+     */
+    public int peek() throws IOException {
+        hasNext();
+        return peekSignificant();
+    }
+
+    public String nextName() throws IOException {
+        hasNext();
+        String name = nextString();
+        if (peekSignificant() == ':') mPos++;
+        return name;
+    }
+
+    /**
+     * Reads a string, number or literal as text.
+     */
+    public String nextValue() throws IOException {
+        int ch = peek();
+        if (ch == '"') return nextString();
+        if (ch == '{' || ch == '[') throw new IOException("Expected a value but was " + (char) ch);
+        mString.setLength(0);
+        while (fill()) {
+            char c = mBuffer[mPos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c <= ' ') break;
+            mString.append(c);
+            mPos++;
+        }
+        String literal = mString.toString();
+        return literal.equals("null") ? null : literal;
+    }
+
+    public int nextInt() throws IOException {
+        String value = nextValue();
+        try {
+            return value != null ? (int) Double.parseDouble(value) : 0;
+        } catch (NumberFormatException e) {
+            throw new IOException("Expected a number but was " + value);
+        }
+    }
+
+    public long nextLong() throws IOException {
+        String value = nextValue();
+        try {
+            return value != null ? (long) Double.parseDouble(value) : 0;
+        } catch (NumberFormatException e) {
+            throw new IOException("Expected a number but was " + value);
+        }
+    }
+
+    /**
+     * Skips the next value with everything nested in it.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int ch = peek();
+            switch (ch) {
+                case '{':
+                case '[':
+                    mPos++;
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    mPos++;
+                    depth--;
+                    break;
+                case '"':
+                    mPos++;
+                    skipString();
+                    break;
+                case -1:
+                    throw new IOException("Unexpected end of input");
+                default:
+                    while (fill()) {
+                        char c = mBuffer[mPos];
+                        if (c == ',' || c == '}' || c == ']' || c == ':' || c <= ' ') break;
+                        mPos++;
+                    }
+            }
+        } while (depth > 0);
+    }
+
+    private String nextString() throws IOException {
+        expect('"');
+        mString.setLength(0);
+        while (true) {
+            if (!fill()) throw new IOException("Unterminated string");
+            // copy runs without escapes at once
+            int start = mPos;
+            while (mPos < mLimit && mBuffer[mPos] != '"' && mBuffer[mPos] != '\\') {
+                mPos++;
+            }
+            mString.append(mBuffer, start, mPos - start);
+            if (mPos == mLimit) continue;
+            char c = mBuffer[mPos++];
+            if (c == '"') return mString.toString();
+            mString.append(unescape());
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            if (!fill()) throw new IOException("Unterminated string");
+            char c = mBuffer[mPos++];
+            if (c == '"') return;
+            if (c == '\\') unescape();
+        }
+    }
+
+    private char unescape() throws IOException {
+        if (!fill()) throw new IOException("Unterminated escape");
+        char c = mBuffer[mPos++];
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (!fill()) throw new IOException("Unterminated escape");
+                    int digit = Character.digit(mBuffer[mPos++], 16);
+                    if (digit < 0) throw new IOException("Invalid escape");
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                return c;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        hasNext();
+        int ch = peekSignificant();
+        if (ch != expected) {
+            throw new IOException("Expected " + expected + " but was " + (ch == -1 ? "end of input" : String.valueOf((char) ch)));
+        }
+        mPos++;
+    }
+
+    private int peekSignificant() throws IOException {
+        while (fill()) {
+            char c = mBuffer[mPos];
+            if (c > ' ') return c;
+            mPos++;
+        }
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        if (mPos < mLimit) return true;
+        mLimit = mReader.read(mBuffer, 0, mBuffer.length);
+        mPos = 0;
+        if (mLimit <= 0) {
+            mLimit = 0;
+            return false;
+        }
+        return true;
+    }
+}
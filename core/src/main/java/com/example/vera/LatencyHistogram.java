@@ -0,0 +1,105 @@
+package com.example.vera;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free histogram of latencies in microseconds.
+ *
+ * Buckets are log-linear: every power of two is split into 8 buckets, so a
+ * percentile is reported within 12.5% of the recorded value with a fixed
+ * amount of memory and no allocation per sample.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicIntegerArray mCounts = new AtomicIntegerArray(64 * SUB_BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long micros) {
+        if (micros < 0) micros = 0;
+        mCounts.incrementAndGet(bucket(micros));
+        mCount.incrementAndGet();
+        long max;
+        while (micros > (max = mMax.get()) && !mMax.compareAndSet(max, micros)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, 0 if nothing
+     * was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < mCounts.length(); i++) {
+            seen += mCounts.get(i);
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(upperBound(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Adds the samples of another histogram to this one.
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < mCounts.length(); i++) {
+            int count = other.mCounts.get(i);
+            if (count > 0) mCounts.addAndGet(i, count);
+        }
+        mCount.addAndGet(other.mCount.get());
+        long micros = other.mMax.get();
+        long max;
+        while (micros > (max = mMax.get()) && !mMax.compareAndSet(max, micros)) {
+            // retry
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < mCounts.length(); i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mMax.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " p50=" + millis(getPercentile(50)) + " p95=" + millis(getPercentile(95))
+                + " p99=" + millis(getPercentile(99)) + " max=" + millis(getMax()) + " ms";
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> exponent) & (SUB_BUCKETS - 1);
+        return (exponent + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << exponent) - 1;
+    }
+
+    private static String millis(long micros) {
+        return String.valueOf(micros / 1000) + '.' + (micros / 100) % 10;
+    }
+}
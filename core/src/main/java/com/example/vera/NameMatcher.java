@@ -0,0 +1,172 @@
+package com.example.vera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds device names in recognized text.
+ *
+ * Names are compiled into an Aho-Corasick automaton once per version of the
+ * device list, so a text is matched in one pass however many devices there
+ * are. Matches don't overlap: the leftmost one wins, and of those starting at
+ * the same place the longest one.
+ */
+public class NameMatcher {
+
+    private final int mVersion;
+    private final Device[] mDevices;
+
+    // children of node n are mLabels/mTargets[mFirst[n] .. mFirst[n + 1]), sorted by label
+    private final int[] mFirst;
+    private final char[] mLabels;
+    private final int[] mTargets;
+    private final int[] mFail;
+    // device whose name ends at the node, or -1
+    private final int[] mOutput;
+    // closest node on the fail chain with an output, or 0
+    private final int[] mDictLink;
+    private final int[] mDepth;
+
+    /**
+     * Devices with the same name resolve to the first of them.
+     */
+    public NameMatcher(List<Device> devices, int version) {
+        mVersion = version;
+        mDevices = devices.toArray(new Device[devices.size()]);
+
+        List<TreeMap<Character, Integer>> children = new ArrayList<TreeMap<Character, Integer>>();
+        List<Integer> outputs = new ArrayList<Integer>();
+        List<Integer> depths = new ArrayList<Integer>();
+        children.add(new TreeMap<Character, Integer>());
+        outputs.add(-1);
+        depths.add(0);
+        for (int d = 0; d < mDevices.length; d++) {
+            String name = mDevices[d].name;
+            if (name.length() == 0) continue;
+            int node = 0;
+            for (int i = 0; i < name.length(); i++) {
+                Integer next = children.get(node).get(name.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    outputs.add(-1);
+                    depths.add(i + 1);
+                    children.get(node).put(name.charAt(i), next);
+                }
+                node = next;
+            }
+            if (outputs.get(node) < 0) {
+                outputs.set(node, d);
+            }
+        }
+
+        int nodes = children.size();
+        mFirst = new int[nodes + 1];
+        for (int n = 0; n < nodes; n++) {
+            mFirst[n + 1] = mFirst[n] + children.get(n).size();
+        }
+        mLabels = new char[mFirst[nodes]];
+        mTargets = new int[mFirst[nodes]];
+        mOutput = new int[nodes];
+        mDepth = new int[nodes];
+        for (int n = 0; n < nodes; n++) {
+            int i = mFirst[n];
+            for (Map.Entry<Character, Integer> entry : children.get(n).entrySet()) {
+                mLabels[i] = entry.getKey();
+                mTargets[i++] = entry.getValue();
+            }
+            mOutput[n] = outputs.get(n);
+            mDepth[n] = depths.get(n);
+        }
+
+        // failure links, breadth first so that shorter suffixes are done first
+        mFail = new int[nodes];
+        mDictLink = new int[nodes];
+        int[] queue = new int[nodes];
+        int head = 0;
+        int tail = 0;
+        for (int i = mFirst[0]; i < mFirst[1]; i++) {
+            queue[tail++] = mTargets[i];
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = mFirst[node]; i < mFirst[node + 1]; i++) {
+                int child = mTargets[i];
+                int fail = mFail[node];
+                int next;
+                while ((next = child(fail, mLabels[i])) < 0 && fail != 0) {
+                    fail = mFail[fail];
+                }
+                mFail[child] = next >= 0 ? next : 0;
+                mDictLink[child] = mOutput[mFail[child]] >= 0 ? mFail[child] : mDictLink[mFail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Version of the device list the matcher was built from.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Devices named in the text, in the order they are named.
+     */
+    public List<Device> match(String text) {
+        int length = text.length();
+        if (length == 0 || mDevices.length == 0) return Collections.emptyList();
+        // longest name starting at each position
+        int[] longest = new int[length];
+        int[] device = new int[length];
+        int node = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = text.charAt(i);
+            int next;
+            while ((next = child(node, ch)) < 0 && node != 0) {
+                node = mFail[node];
+            }
+            node = next >= 0 ? next : 0;
+            for (int out = mOutput[node] >= 0 ? node : mDictLink[node]; out != 0; out = mDictLink[out]) {
+                int start = i + 1 - mDepth[out];
+                if (mDepth[out] > longest[start]) {
+                    longest[start] = mDepth[out];
+                    device[start] = mOutput[out];
+                }
+            }
+        }
+        Set<Device> result = new LinkedHashSet<Device>();
+        for (int i = 0; i < length; ) {
+            if (longest[i] > 0) {
+                result.add(mDevices[device[i]]);
+                i += longest[i];
+            } else {
+                i++;
+            }
+        }
+        return new ArrayList<Device>(result);
+    }
+
+    private int child(int node, char ch) {
+        int low = mFirst[node];
+        int high = mFirst[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = mLabels[mid];
+            if (label < ch) {
+                low = mid + 1;
+            } else if (label > ch) {
+                high = mid - 1;
+            } else {
+                return mTargets[mid];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.vera;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parts of an sdata response devices are built from.
+ */
+final class Sdata {
+
+    /**
+     * False if the response only has what changed since the versions in the
+     * request.
+     */
+    boolean full = true;
+    long loadTime = -1;
+    long dataVersion = -1;
+
+    final Map<Integer, String> categories = new HashMap<Integer, String>();
+
+    /**
+     * Fields of each device listed in {@link Device#FIELDS} and those asked
+     * for, as text.
+     */
+    final List<Map<String, String>> devices = new ArrayList<Map<String, String>>();
+}
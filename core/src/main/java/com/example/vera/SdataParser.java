@@ -0,0 +1,98 @@
+package com.example.vera;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads an sdata response as it's being received, skipping scenes, rooms and
+ * every device field that isn't used.
+ */
+final class SdataParser implements Transport.Parser<Sdata> {
+
+    private final Set<String> mExtraFields;
+
+    /**
+     * Keeps the given fields of devices in addition to {@link Device#FIELDS}.
+     */
+    SdataParser(String... extraFields) {
+        mExtraFields = extraFields.length > 0 ? new HashSet<String>(Arrays.asList(extraFields)) : Collections.<String>emptySet();
+    }
+
+    @Override
+    public Sdata parse(InputStream in) throws IOException {
+        JsonPullParser parser = new JsonPullParser(new InputStreamReader(in, "UTF-8"));
+        Sdata sdata = new Sdata();
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+            if (name.equals("full")) {
+                sdata.full = parser.nextInt() == 1;
+            } else if (name.equals("loadtime")) {
+                sdata.loadTime = parser.nextLong();
+            } else if (name.equals("dataversion")) {
+                sdata.dataVersion = parser.nextLong();
+            } else if (name.equals("categories")) {
+                readCategories(parser, sdata);
+            } else if (name.equals("devices")) {
+                readDevices(parser, sdata);
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return sdata;
+    }
+
+    private static void readCategories(JsonPullParser parser, Sdata sdata) throws IOException {
+        parser.beginArray();
+        while (parser.hasNext()) {
+            int id = -1;
+            String name = null;
+            parser.beginObject();
+            while (parser.hasNext()) {
+                String field = parser.nextName();
+                if (field.equals("id")) {
+                    id = parser.nextInt();
+                } else if (field.equals("name")) {
+                    name = parser.nextValue();
+                } else {
+                    parser.skipValue();
+                }
+            }
+            parser.endObject();
+            if (name != null) {
+                sdata.categories.put(id, name);
+            }
+        }
+        parser.endArray();
+    }
+
+    private void readDevices(JsonPullParser parser, Sdata sdata) throws IOException {
+        parser.beginArray();
+        while (parser.hasNext()) {
+            Map<String, String> fields = new HashMap<String, String>(Device.FIELDS.length * 2);
+            parser.beginObject();
+            while (parser.hasNext()) {
+                String name = parser.nextName();
+                String field = Device.field(name);
+                if (field != null) {
+                    fields.put(field, parser.nextValue());
+                } else if (mExtraFields.contains(name)) {
+                    fields.put(name, parser.nextValue());
+                } else {
+                    parser.skipValue();
+                }
+            }
+            parser.endObject();
+            sdata.devices.add(fields);
+        }
+        parser.endArray();
+    }
+}
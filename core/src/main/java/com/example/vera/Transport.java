@@ -0,0 +1,74 @@
+package com.example.vera;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.Future;
+
+/**
+ * Executes requests to controllers.
+ */
+public interface Transport {
+
+    /**
+     * Called on the transport's thread when a request completes.
+     */
+    public interface Callback<T> {
+
+        /**
+         * Parsed body of the response, or null if the controller answered
+         * with an error status.
+         */
+        void onResponse(T body);
+
+        void onFailure(Exception e);
+    }
+
+    /**
+     * Reads the body of a successful response while it's being received.
+     */
+    public interface Parser<T> {
+
+        T parse(InputStream in) throws IOException;
+    }
+
+    /**
+     * Reads the body as a string.
+     */
+    Parser<String> TEXT = new Parser<String>() {
+        @Override
+        public String parse(InputStream in) throws IOException {
+            Reader reader = new InputStreamReader(in, "UTF-8");
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[4096];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, count);
+            }
+            return sb.toString();
+        }
+    };
+
+    /**
+     * Starts a GET request. The future gives the same result as the
+     * callback, which may be null.
+     *
+     * @param connectTimeout milliseconds to connect, 0 to wait forever
+     * @param readTimeout milliseconds to wait for data, 0 to wait forever
+     */
+    <T> Future<T> get(Url url, int connectTimeout, int readTimeout, Parser<T> parser, Callback<T> callback);
+
+    /**
+     * Latencies of the requests of a type, which is the {@code id} parameter
+     * of the request, like {@code sdata} or {@code action}.
+     */
+    LatencyHistogram getLatency(String type);
+
+    /**
+     * Number of requests that run at once, the others wait for them.
+     */
+    int getConcurrency();
+
+    void shutdown();
+}
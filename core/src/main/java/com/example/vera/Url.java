@@ -0,0 +1,115 @@
+package com.example.vera;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+/**
+ * Address of a controller request, a base with query parameters appended.
+ *
+ * Covers the part of {@code android.net.Uri} the requests use, so that they
+ * can be built off the device too. Parameters are percent-encoded as UTF-8,
+ * with spaces as {@code %20}.
+ */
+public final class Url {
+
+    private final String mUrl;
+
+    private Url(String url) {
+        mUrl = url;
+    }
+
+    public static Url parse(String url) {
+        return new Url(url);
+    }
+
+    public Builder buildUpon() {
+        return new Builder(mUrl);
+    }
+
+    public String getHost() {
+        int start = mUrl.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < mUrl.length() && ":/?#".indexOf(mUrl.charAt(end)) < 0) {
+            end++;
+        }
+        return mUrl.substring(start, end);
+    }
+
+    /**
+     * Decoded value of the first parameter with the name, null if there is
+     * none.
+     */
+    public String getQueryParameter(String name) {
+        int start = mUrl.indexOf('?');
+        if (start < 0) return null;
+        int end = mUrl.indexOf('#', start);
+        if (end < 0) end = mUrl.length();
+        String encoded = encode(name);
+        while (start < end) {
+            int next = mUrl.indexOf('&', start + 1);
+            if (next < 0 || next > end) next = end;
+            int equals = mUrl.indexOf('=', start + 1);
+            boolean hasValue = equals >= 0 && equals < next;
+            if (mUrl.regionMatches(start + 1, encoded, 0, encoded.length())
+                    && (hasValue ? equals : next) == start + 1 + encoded.length()) {
+                return hasValue ? decode(mUrl.substring(equals + 1, next)) : "";
+            }
+            start = next;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Url && mUrl.equals(((Url) o).mUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return mUrl.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mUrl;
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class Builder {
+
+        private final StringBuilder mUrl;
+        private boolean mQuery;
+
+        private Builder(String url) {
+            mUrl = new StringBuilder(url);
+            mQuery = url.indexOf('?') >= 0;
+        }
+
+        public Builder appendQueryParameter(String name, String value) {
+            mUrl.append(mQuery ? '&' : '?').append(encode(name)).append('=').append(encode(value));
+            mQuery = true;
+            return this;
+        }
+
+        public Url build() {
+            return new Url(mUrl.toString());
+        }
+    }
+}
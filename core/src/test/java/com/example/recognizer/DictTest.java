@@ -0,0 +1,68 @@
+package com.example.recognizer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DictTest {
+
+    private static final String NL = System.getProperty("line.separator");
+
+    @Test
+    public void keepsWordsInTheOrderTheyWereAdded() {
+        String[] words = Vocabulary.words(5000, 5);
+        Dict dict = new Dict();
+        StringBuilder expected = new StringBuilder();
+        for (String word : words) {
+            dict.add(word, "a");
+            expected.append(word).append("  a").append(NL);
+        }
+        // repeats are neither added again nor moved
+        for (int i = words.length - 1; i >= 0; i -= 3) {
+            dict.add(words[i], "b");
+        }
+        assertEquals(expected.toString(), dict.toString());
+    }
+
+    @Test
+    public void streamedGrammarDictionaryIsTheSame() throws InterruptedException, IOException {
+        List<String> names = new ArrayList<String>(Arrays.asList(Vocabulary.names(2000, 3000, 9)));
+        // a single entry longer than the stream buffer, and one of several buffers
+        names.add(1000, repeat("ша", 3000));
+        names.add(repeat("ёж", 20000) + " " + names.get(0));
+        String[] commands = names.toArray(new String[names.size()]);
+
+        String expected = new Grammar(commands, new PhonMapper()).getDict();
+        assertTrue(expected.getBytes("UTF-8").length > 4 * 8192);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Dict dict = new Dict(PhonMapper.getPhoneSet(), Channels.newChannel(out));
+            new Grammar(commands, new PhonMapper(), dict, executor);
+            dict.close();
+            assertArrayEquals(expected.getBytes("UTF-8"), out.toByteArray());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.recognizer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GrammarTest {
+
+    private static final String[] COMMANDS = {"свет в кухне", "свет в ванной", "свет", "торшер"};
+
+    @Test
+    public void sharedPrefixesShareStates() {
+        Grammar grammar = new Grammar(COMMANDS, new PhonMapper());
+        // start, final, "свет" and "свет в"
+        Fsg factored = grammar.getFsg();
+        assertEquals(4, factored.getStates());
+        // five words, the end after "свет" and the exit
+        assertEquals(7, factored.getArcs());
+
+        // two states of its own for each of the three-word commands
+        Fsg flat = grammar.getFlatFsg();
+        assertEquals(6, flat.getStates());
+        assertEquals(9, flat.getArcs());
+    }
+
+    @Test
+    public void commandsLimitRepeatsTheHub() {
+        Grammar grammar = new Grammar(COMMANDS, new PhonMapper());
+        grammar.setMaxCommands(2);
+        // every layer has a hub of its own and a copy of the commands
+        assertEquals(2 + 2 * (1 + 2), grammar.getFsg().getStates());
+        assertEquals(2 + 2 * (1 + 4), grammar.getFlatFsg().getStates());
+    }
+
+    @Test
+    public void factoredIsNeverLarger() {
+        Grammar grammar = new Grammar(Vocabulary.names(1000, 300, 3), new PhonMapper());
+        Fsg factored = grammar.getFsg();
+        Fsg flat = grammar.getFlatFsg();
+        assertTrue(factored.getStates() < flat.getStates());
+        assertTrue(factored.getArcs() < flat.getArcs());
+    }
+}
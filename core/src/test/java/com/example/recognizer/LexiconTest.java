@@ -0,0 +1,206 @@
+package com.example.recognizer;
+
+import com.example.lexicon.LexiconCompiler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LexiconTest {
+
+    private final Map<String, String> mEntries = new LinkedHashMap<String, String>();
+    private final PhoneSet mPhoneSet = new PhoneSet(Collections.<String>emptyList());
+    private final PhonMapper mMapper = new PhonMapper();
+    private File mSource;
+    private File mTarget;
+
+    @Before
+    public void setUp() throws IOException {
+        mSource = File.createTempFile("lexicon", ".txt");
+        mTarget = File.createTempFile("lexicon", ".lex");
+        for (String word : Vocabulary.words(1000, 4)) {
+            put(word);
+        }
+        // runs of a shared prefix longer than a restart block, so they cross block boundaries
+        for (int i = 0; i < 40; i++) {
+            put("свет" + i);
+            put("светильник" + i);
+        }
+        put("дом");
+        put("дома");
+        put("домашний");
+        // ASCII, then two-byte letters, ё after я in UTF-8, then three- and four-byte characters
+        put("abc");
+        put("яблоко");
+        put("ёлка");
+        put("€");
+        put("💡");
+    }
+
+    @After
+    public void tearDown() {
+        mSource.delete();
+        mTarget.delete();
+    }
+
+    @Test
+    public void findsEveryWord() throws IOException {
+        Lexicon lexicon = compile();
+        assertEquals(mEntries.size(), lexicon.size());
+        for (Map.Entry<String, String> entry : mEntries.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue(), get(lexicon, entry.getKey()));
+        }
+        lexicon.verify();
+    }
+
+    @Test
+    public void missesWordsBeforeBetweenAndAfterBlocks() throws IOException {
+        Lexicon lexicon = compile();
+        TreeSet<String> misses = new TreeSet<String>();
+        misses.add("");
+        misses.add("0");
+        misses.add("свет");
+        misses.add("свет400");
+        misses.add("светильник");
+        misses.add("до");
+        misses.add("домашни");
+        misses.add("домашний0");
+        misses.add("ёёёё");
+        misses.add("\uFFFF");
+        for (String word : mEntries.keySet()) {
+            misses.add(word + "ъ");
+            if (word.length() > 1) misses.add(word.substring(0, word.length() - 1));
+        }
+        StringBuilder tooLong = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            tooLong.append('ж');
+        }
+        misses.add(tooLong.toString());
+        misses.removeAll(mEntries.keySet());
+        PhoneBuffer buffer = new PhoneBuffer();
+        buffer.add(0);
+        for (String word : misses) {
+            assertFalse(word, lexicon.get(word, buffer));
+            // left as it was
+            assertEquals(1, buffer.size());
+        }
+    }
+
+    @Test
+    public void laterLinesWin() throws IOException {
+        mEntries.put("дом", "d oo m");
+        Lexicon lexicon = compile("дом  t e s t");
+        assertEquals("d oo m", get(lexicon, "дом"));
+    }
+
+    @Test
+    public void rejectsOtherFormats() throws IOException {
+        ByteBuffer buffer = read(compileFile());
+        buffer.putInt(0, 0x4C455831);
+        try {
+            new Lexicon(buffer, mPhoneSet);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // the old format
+        }
+        try {
+            new Lexicon(ByteBuffer.allocate(4), mPhoneSet);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // too short for a header
+        }
+    }
+
+    @Test
+    public void verifyRejectsCorruptedTable() throws IOException {
+        ByteBuffer buffer = read(compileFile());
+        int pos = buffer.limit() / 2;
+        buffer.put(pos, (byte) (buffer.get(pos) ^ 1));
+        Lexicon lexicon = new Lexicon(buffer, mPhoneSet);
+        try {
+            lexicon.verify();
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void versionFollowsContent() throws IOException {
+        String version = compile().getVersion();
+        assertEquals(version, compile().getVersion());
+        mEntries.put("свет17", "s v e t");
+        assertFalse(version.equals(compile().getVersion()));
+    }
+
+    private void put(String word) {
+        String pronoun = mMapper.getPronoun(word);
+        // every entry needs at least one phone
+        mEntries.put(word, pronoun.length() > 0 ? pronoun : "SIL");
+    }
+
+    private String get(Lexicon lexicon, String word) {
+        PhoneBuffer buffer = new PhoneBuffer();
+        assertTrue(word, lexicon.get(word, buffer));
+        StringBuilder sb = new StringBuilder();
+        buffer.appendTo(sb, mPhoneSet);
+        return sb.toString();
+    }
+
+    private Lexicon compile(String... extraLines) throws IOException {
+        return new Lexicon(read(compileFile(extraLines)), mPhoneSet);
+    }
+
+    private File compileFile(String... extraLines) throws IOException {
+        List<String> lines = new ArrayList<String>(extraLines.length + mEntries.size());
+        Collections.addAll(lines, extraLines);
+        for (Map.Entry<String, String> entry : mEntries.entrySet()) {
+            lines.add(entry.getKey() + "  " + entry.getValue());
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mSource), "UTF-8");
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        LexiconCompiler.compile(mSource, mTarget);
+        return mTarget;
+    }
+
+    private static ByteBuffer read(File file) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // reads until full
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.recognizer;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PhonMapperTest {
+
+    private static final int[] THREADS = {1, 2, 3, 8};
+
+    @Test
+    public void pronunciationsDoNotDependOnThreads() throws InterruptedException {
+        List<String> words = words();
+        String[] expected = transcribe(new PhonMapper(), words);
+        for (int threads : THREADS) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                assertArrayEquals("threads " + threads, expected, new PhonMapper().getPronouns(words, executor));
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void sharedCacheDoesNotChangePronunciations() throws InterruptedException, IOException {
+        List<String> words = words();
+        String[] expected = transcribe(new PhonMapper(), words);
+        File file = File.createTempFile("pronoun", ".cache");
+        try {
+            // small enough for the threads to evict each other's entries
+            PronounCache cache = new PronounCache(file, PhonMapper.getRulesVersion(), 64);
+            for (int threads : THREADS) {
+                PhonMapper mapper = new PhonMapper();
+                mapper.setCache(cache);
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    assertArrayEquals("threads " + threads, expected, mapper.getPronouns(words, executor));
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void grammarDictionaryDoesNotDependOnThreads() throws InterruptedException {
+        String[] names = Vocabulary.names(2000, 3000, 5);
+        String expected = new Grammar(names, new PhonMapper()).getDict();
+        for (int threads : THREADS) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                assertEquals("threads " + threads, expected, new Grammar(names, new PhonMapper(), executor).getDict());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static List<String> words() {
+        List<String> words = new ArrayList<String>();
+        for (String word : Vocabulary.words(5000, 3)) {
+            words.add(word);
+            // repeats and mixed case go through the same batches
+            if (word.length() % 3 == 0) {
+                words.add(word.toUpperCase());
+            }
+        }
+        return words;
+    }
+
+    private static String[] transcribe(PhonMapper mapper, List<String> words) {
+        String[] result = new String[words.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = mapper.getPronoun(words.get(i));
+        }
+        return result;
+    }
+}
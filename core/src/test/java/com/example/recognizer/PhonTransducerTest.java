@@ -0,0 +1,180 @@
+package com.example.recognizer;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks the transducer against the regex cascade it replaced.
+ */
+public class PhonTransducerTest {
+
+    private static final String HOTWORDS = "app/src/main/dict/ru/hotwords";
+
+    /**
+     * Letters the rules look at, the rest of the alphabet, some that have no
+     * phones and the line terminators {@code $} treats specially.
+     */
+    private static final String ALPHABET = "бгвклмнрхтдфсеиюёяьйаоуэыжзпцчшщЕЯЮБ x\n\r\u0085 ";
+
+    private final PhonMapper mMapper = new PhonMapper();
+
+    @Test
+    public void dictionaryWords() throws IOException {
+        List<String> words = readWords();
+        assertFalse(words.isEmpty());
+        for (String word : words) {
+            check(word);
+        }
+    }
+
+    @Test
+    public void vocabulary() {
+        for (String word : Vocabulary.words(20000, 1)) {
+            check(word);
+            check(word + "к");
+            check(word + "й");
+        }
+        for (String name : Vocabulary.names(2000, 500, 1)) {
+            check(name);
+        }
+    }
+
+    @Test
+    public void allShortStrings() {
+        char[] chars = new char[3];
+        for (int length = 1; length <= chars.length; length++) {
+            int count = (int) Math.pow(ALPHABET.length(), length);
+            for (int n = 0; n < count; n++) {
+                int rest = n;
+                for (int i = 0; i < length; i++) {
+                    chars[i] = ALPHABET.charAt(rest % ALPHABET.length());
+                    rest /= ALPHABET.length();
+                }
+                check(new String(chars, 0, length));
+            }
+        }
+    }
+
+    @Test
+    public void randomStrings() {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < 200000; n++) {
+            sb.setLength(0);
+            int length = 4 + random.nextInt(9);
+            for (int i = 0; i < length; i++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            check(sb.toString());
+        }
+    }
+
+    private void check(String word) {
+        assertEquals(word, Cascade.getPronoun(word), mMapper.getPronoun(word));
+    }
+
+    private static List<String> readWords() throws IOException {
+        File file = new File(HOTWORDS);
+        if (!file.exists()) {
+            // gradle runs the tests in the module directory
+            file = new File("..", HOTWORDS);
+        }
+        List<String> words = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0) {
+                    words.add(line.split("  ")[0]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return words;
+    }
+
+    /**
+     * The rules as PhonMapper used to apply them, one replaceAll after another.
+     */
+    private static final class Cascade {
+
+        private static final Map<Pattern, String> PATTERNS = new LinkedHashMap<Pattern, String>() {{
+            put(Pattern.compile("б([аоуэырлнвзмдг])"), "P$1");
+            put(Pattern.compile("г([аоуэырлнвзмдб])"), "Q$1");
+            put(Pattern.compile("в([аоуэырлнгзмдб])"), "W$1");
+
+            put(Pattern.compile("б([еиюёяь])"), "B$1");
+            put(Pattern.compile("г([еиюёяь])"), "G$1");
+            put(Pattern.compile("к([еиюёяь])"), "K$1");
+            put(Pattern.compile("л([еиюёяь])"), "L$1");
+            put(Pattern.compile("в([еиюёяь])"), "V$1");
+            put(Pattern.compile("м([еиюёяь])"), "M$1");
+            put(Pattern.compile("н([еиюёяь])"), "N$1");
+            put(Pattern.compile("р([еиюёяь])"), "R$1");
+            put(Pattern.compile("х([еиюёяь])"), "H$1");
+            put(Pattern.compile("т([еиюёяь])"), "T$1");
+            put(Pattern.compile("д([еиюёяь])"), "D$1");
+            put(Pattern.compile("ф([еиюёяь])"), "F$1");
+            put(Pattern.compile("с([еиюёяь])"), "S$1");
+
+            put(Pattern.compile("ей"), "J");
+            put(Pattern.compile("^е"), "E");
+            put(Pattern.compile("^я"), "Y");
+            put(Pattern.compile("^ю"), "'");
+            put(Pattern.compile("([аоуеэы])ю"), "$1'");
+            put(Pattern.compile("(у|ю)(к)$"), "U$2");
+            put(Pattern.compile("ой$"), "I");
+        }};
+
+        private static final String[] PHONS = {
+                "E", "j e", "Y", "j ae", "U", "uu", "W", "v", "J", "ee j", "I", "oo j", "'", "j u",
+                "P", "b", "Q", "g", "B", "bb", "R", "rr", "G", "gg", "K", "kk", "L", "ll", "V", "vv",
+                "M", "mm", "H", "hh", "N", "nn", "T", "tt", "D", "dd", "F", "ff", "S", "ss",
+                "а", "a", "б", "p", "в", "f", "г", "k", "д", "d", "е", "e", "ё", "j oo", "ж", "zh",
+                "з", "z", "и", "i", "й", "j", "к", "k", "л", "l", "м", "m", "н", "n", "о", "ay",
+                "п", "p", "р", "r", "с", "s", "т", "t", "у", "u", "ф", "f", "х", "h", "ц", "c",
+                "ч", "ch", "ш", "sh", "щ", "sch", "ы", "y", "э", "ay", "ю", "u", "я", "a",
+        };
+
+        private static final Map<String, String> PHON_MAP = new HashMap<String, String>();
+
+        static {
+            for (int i = 0; i < PHONS.length; i += 2) {
+                PHON_MAP.put(PHONS[i], PHONS[i + 1]);
+            }
+        }
+
+        static String getPronoun(String str) {
+            str = str.toLowerCase();
+            for (Map.Entry<Pattern, String> entry : PATTERNS.entrySet()) {
+                str = entry.getKey().matcher(str).replaceAll(entry.getValue());
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < str.length(); i++) {
+                String phon = PHON_MAP.get(str.substring(i, i + 1));
+                if (phon != null) {
+                    if (sb.length() > 0) sb.append(' ');
+                    sb.append(phon);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.recognizer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PronounCacheTest {
+
+    private static final String VERSION = "1";
+
+    private final PhonMapper mMapper = new PhonMapper();
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("pronoun", ".cache");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void keepsPronunciationsAcrossLoads() throws IOException {
+        PronounCache cache = open();
+        assertFalse(cache.load());
+        transcribe(cache, "лампа", "свет");
+        cache.save();
+
+        cache = open();
+        assertTrue(cache.load());
+        assertEquals(mMapper.getPronoun("лампа"), transcribe(cache, "лампа"));
+        assertEquals(1, cache.getStoredHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void dropsWordsTheVocabularyNoLongerUses() throws IOException {
+        PronounCache cache = open();
+        transcribe(cache, "лампа", "свет", "люстра");
+        cache.save();
+
+        cache = open();
+        assertTrue(cache.load());
+        assertEquals(3, cache.getStoredSize());
+        transcribe(cache, "свет", "торшер");
+        cache.save();
+        assertEquals(2, cache.getStoredSize());
+
+        cache = open();
+        assertTrue(cache.load());
+        assertEquals(2, cache.getStoredSize());
+        transcribe(cache, "свет", "торшер", "лампа");
+        assertEquals(2, cache.getStoredHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void storesUpToTheLimit() throws IOException {
+        PronounCache cache = new PronounCache(mFile, VERSION, 16, 2);
+        transcribe(cache, "лампа", "свет", "люстра");
+        assertEquals(2, cache.getStoredSize());
+        // the rest still goes to the first level
+        assertEquals(mMapper.getPronoun("люстра"), transcribe(cache, "люстра"));
+        assertEquals(1, cache.getHits());
+        cache.save();
+
+        cache = new PronounCache(mFile, VERSION, 16, 2);
+        assertTrue(cache.load());
+        assertEquals(2, cache.getStoredSize());
+    }
+
+    @Test
+    public void ignoresFileOfOtherRules() throws IOException {
+        PronounCache cache = open();
+        transcribe(cache, "лампа");
+        cache.save();
+
+        cache = new PronounCache(mFile, "2", 16);
+        assertFalse(cache.load());
+        assertEquals(0, cache.getStoredSize());
+    }
+
+    private PronounCache open() {
+        return new PronounCache(mFile, VERSION, 16);
+    }
+
+    private String transcribe(PronounCache cache, String... words) {
+        PhonMapper mapper = new PhonMapper();
+        mapper.setCache(cache);
+        String last = null;
+        for (String word : words) {
+            last = mapper.getPronoun(word);
+        }
+        return last;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.recognizer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RawAudioLogTest {
+
+    private static final int SLOTS = 4;
+    // a frame of four samples
+    private static final int SLOT_BYTES = 8;
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("raw", "");
+        mDir.delete();
+        mDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void wrapsAroundTheRing() throws Exception {
+        RawAudioLog log = new RawAudioLog(mDir, 1 << 20, SLOTS, SLOT_BYTES);
+        int utterances = 25;
+        for (int u = 0; u < utterances; u++) {
+            // exactly a ring of slots each time, drained before the next one
+            assertTrue(log.beginUtterance());
+            assertTrue(log.write(frame(u), 4));
+            assertTrue(log.write(frame(u + 100), 4));
+            assertTrue(log.endUtterance());
+            log.start();
+            log.stop();
+        }
+        File[] files = files();
+        assertEquals(utterances, files.length);
+        for (int u = 0; u < utterances; u++) {
+            assertArrayEquals(concat(frame(u), frame(u + 100)), read(files[u]));
+        }
+        assertEquals(2 * utterances, log.getWrittenFrames());
+        assertEquals(0, log.getDroppedFrames());
+        assertEquals(0, log.getDroppedMarkers());
+    }
+
+    @Test
+    public void splitsSamplesLongerThanASlot() throws Exception {
+        RawAudioLog log = new RawAudioLog(mDir, 1 << 20, SLOTS, SLOT_BYTES);
+        short[] samples = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        log.beginUtterance();
+        assertTrue(log.write(samples, samples.length));
+        log.start();
+        log.stop();
+        assertEquals(3, log.getWrittenFrames());
+        assertArrayEquals(samples, read(files()[0]));
+    }
+
+    @Test
+    public void dropsFramesAndMarkersWhenTheRingIsFull() throws Exception {
+        RawAudioLog log = new RawAudioLog(mDir, 1 << 20, SLOTS, SLOT_BYTES);
+        assertTrue(log.beginUtterance());
+        for (int i = 0; i < SLOTS - 1; i++) {
+            assertTrue(log.write(frame(i), 4));
+        }
+        assertFalse(log.write(frame(9), 4));
+        assertFalse(log.endUtterance());
+        assertFalse(log.beginUtterance());
+        assertEquals(1, log.getDroppedFrames());
+        assertEquals(2, log.getDroppedMarkers());
+
+        // the next utterance lost its start, none of its samples has a file
+        log.start();
+        awaitWritten(log, SLOTS - 1);
+        assertTrue(log.write(frame(10), 4));
+        assertTrue(log.endUtterance());
+        log.stop();
+
+        File[] files = files();
+        assertEquals(1, files.length);
+        assertArrayEquals(concat(frame(0), frame(1), frame(2)), read(files[0]));
+        assertEquals(SLOTS - 1, log.getWrittenFrames());
+        assertEquals(2, log.getDroppedFrames());
+        assertEquals(2, log.getDroppedMarkers());
+
+        // and the one after it is written in a file of its own
+        log.beginUtterance();
+        log.write(frame(11), 4);
+        log.endUtterance();
+        log.start();
+        log.stop();
+        files = files();
+        assertEquals(2, files.length);
+        assertArrayEquals(frame(11), read(files[1]));
+    }
+
+    @Test
+    public void evictsOldestRawFilesFirst() throws Exception {
+        long now = System.currentTimeMillis();
+        File oldest = create("a.raw", SLOT_BYTES, now - 30000);
+        File older = create("b.raw", SLOT_BYTES, now - 20000);
+        File old = create("c.raw", SLOT_BYTES, now - 10000);
+        // not counted toward the quota, and never deleted
+        File foreign = create("notes.txt", 1000, now - 40000);
+
+        RawAudioLog log = new RawAudioLog(mDir, 4 * SLOT_BYTES, SLOTS, SLOT_BYTES);
+        log.beginUtterance();
+        log.write(frame(1), 4);
+        log.write(frame(2), 4);
+        log.endUtterance();
+        log.start();
+        log.stop();
+
+        assertFalse(oldest.exists());
+        assertTrue(older.exists());
+        assertTrue(old.exists());
+        assertTrue(foreign.exists());
+        assertEquals(1, log.getEvictedFiles());
+        assertEquals(2, log.getWrittenFrames());
+        assertEquals(0, log.getDroppedFrames());
+    }
+
+    @Test
+    public void dropsFramesThatDoNotFitTheQuota() throws Exception {
+        RawAudioLog log = new RawAudioLog(mDir, SLOT_BYTES, SLOTS, SLOT_BYTES);
+        log.beginUtterance();
+        log.write(frame(1), 4);
+        log.write(frame(2), 4);
+        log.endUtterance();
+        log.start();
+        log.stop();
+        // the file being written isn't evicted for its own samples
+        assertEquals(1, log.getWrittenFrames());
+        assertEquals(1, log.getDroppedFrames());
+        assertEquals(0, log.getEvictedFiles());
+        assertArrayEquals(frame(1), read(files()[0]));
+    }
+
+    private static short[] frame(int value) {
+        short[] frame = new short[4];
+        Arrays.fill(frame, (short) value);
+        frame[3] = (short) -value;
+        return frame;
+    }
+
+    private static short[] concat(short[]... frames) {
+        short[] samples = new short[frames.length * 4];
+        for (int i = 0; i < frames.length; i++) {
+            System.arraycopy(frames[i], 0, samples, i * 4, 4);
+        }
+        return samples;
+    }
+
+    private static void awaitWritten(RawAudioLog log, long frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (log.getWrittenFrames() < frames) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private File create(String name, int length, long modified) throws IOException {
+        File file = new File(mDir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        assertTrue(file.setLastModified(modified));
+        return file;
+    }
+
+    /**
+     * Files of the log in the order they were written.
+     */
+    private File[] files() {
+        File[] files = mDir.listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = sequence(lhs);
+                long r = sequence(rhs);
+                return l < r ? -1 : l > r ? 1 : 0;
+            }
+        });
+        return files;
+    }
+
+    private static long sequence(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - ".raw".length()));
+    }
+
+    private static short[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        ShortBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder()).asShortBuffer();
+        short[] samples = new short[buffer.remaining()];
+        buffer.get(samples);
+        return samples;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.recognizer;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Made-up Russian words and device names for tests and benchmarks, the same
+ * for the same seed.
+ */
+public final class Vocabulary {
+
+    private static final String[] ONSETS = {"", "б", "в", "г", "д", "ж", "з", "к", "л", "м", "н", "п", "р", "с", "т", "ф", "х", "ч", "ш", "св", "кр", "ст"};
+    private static final String[] VOWELS = {"а", "е", "ё", "и", "о", "у", "ы", "э", "ю", "я"};
+    private static final String[] CODAS = {"", "", "", "й", "н", "р", "ть", "к", "с"};
+
+    private Vocabulary() {
+    }
+
+    /**
+     * Distinct words of one to four syllables.
+     */
+    public static String[] words(int count, long seed) {
+        Random random = new Random(seed);
+        Set<String> words = new LinkedHashSet<String>(count * 2);
+        StringBuilder sb = new StringBuilder();
+        while (words.size() < count) {
+            sb.setLength(0);
+            int syllables = 1 + random.nextInt(4);
+            for (int i = 0; i < syllables; i++) {
+                sb.append(ONSETS[random.nextInt(ONSETS.length)]).append(VOWELS[random.nextInt(VOWELS.length)]);
+            }
+            sb.append(CODAS[random.nextInt(CODAS.length)]);
+            words.add(sb.toString());
+        }
+        return words.toArray(new String[count]);
+    }
+
+    /**
+     * Distinct names of one to three words from a vocabulary of the given
+     * size.
+     */
+    public static String[] names(int count, int vocabulary, long seed) {
+        String[] words = words(vocabulary, seed);
+        Random random = new Random(seed);
+        Set<String> names = new LinkedHashSet<String>(count * 2);
+        StringBuilder sb = new StringBuilder();
+        while (names.size() < count) {
+            sb.setLength(0);
+            int length = 1 + random.nextInt(3);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) sb.append(' ');
+                sb.append(words[random.nextInt(words.length)]);
+            }
+            names.add(sb.toString());
+        }
+        return names.toArray(new String[count]);
+    }
+}
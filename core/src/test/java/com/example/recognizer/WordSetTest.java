@@ -0,0 +1,85 @@
+package com.example.recognizer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WordSetTest {
+
+    @Test
+    public void survivesGrowth() {
+        // many times the initial table and character array
+        String[] words = Vocabulary.words(20000, 7);
+        WordSet set = new WordSet();
+        for (int i = 0; i < words.length; i++) {
+            assertTrue(words[i], set.add(words[i]));
+            assertEquals(i + 1, set.size());
+        }
+        for (String word : words) {
+            assertTrue(word, set.contains(word));
+            assertFalse(word, set.add(word));
+            assertFalse(word, set.contains(word + "ъ"));
+        }
+        assertEquals(words.length, set.size());
+    }
+
+    @Test
+    public void probesPastCollidingSlots() {
+        // words landing in the same slot of every table up to 1024 slots,
+        // with the last slot taken so that probing wraps around
+        List<String> words = new ArrayList<String>();
+        for (String word : Vocabulary.words(200000, 11)) {
+            if ((slot(word) & 1023) == 1023) words.add(word);
+            if (words.size() == 41) break;
+        }
+        assertEquals(41, words.size());
+        // in the same probe chain but never added
+        String missing = words.remove(40);
+        WordSet set = new WordSet();
+        for (String word : words) {
+            assertTrue(word, set.add(word));
+        }
+        for (String word : words) {
+            assertTrue(word, set.contains(word));
+            assertFalse(word, set.add(word));
+        }
+        assertEquals(words.size(), set.size());
+        assertFalse(set.contains(missing));
+    }
+
+    @Test
+    public void emptyAndLongWords() {
+        WordSet set = new WordSet();
+        assertFalse(set.contains(""));
+        assertTrue(set.add(""));
+        assertFalse(set.add(""));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append((char) ('а' + i % 32));
+        }
+        String word = sb.toString();
+        assertTrue(set.add(word));
+        assertTrue(set.contains(word));
+        assertFalse(set.contains(word.substring(1)));
+        assertEquals(2, set.size());
+    }
+
+    /**
+     * Home slot of the word in a table of any size up to 2^32, the same hash
+     * as WordSet's.
+     */
+    private static int slot(String word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        if (hash == 0) hash = 1;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
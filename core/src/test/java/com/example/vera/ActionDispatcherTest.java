@@ -0,0 +1,149 @@
+package com.example.vera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ActionDispatcherTest {
+
+    private static final String SWITCH_POWER = "urn:upnp-org:serviceId:SwitchPower1";
+    private static final int LATENCY = 100;
+    private static final int PARALLELISM = 3;
+
+    private FakeVera mVera;
+    private HttpTransport mTransport;
+    private ActionDispatcher mDispatcher;
+
+    @Before
+    public void setUp() throws IOException {
+        mVera = new FakeVera(10, LATENCY, 0, 0);
+        mVera.start();
+        mTransport = new HttpTransport(PARALLELISM + 1);
+        mDispatcher = new ActionDispatcher(Url.parse(mVera.getBaseUrl()), mTransport, PARALLELISM);
+    }
+
+    @After
+    public void tearDown() {
+        mTransport.shutdown();
+        mVera.stop();
+    }
+
+    @Test
+    public void mergesActionsWaitingOnTheSameDevice() throws InterruptedException {
+        Recorder recorder = new Recorder(5);
+        for (String value : new String[]{"1", "0", "1", "0", "1"}) {
+            mDispatcher.dispatch(action(1, value), recorder);
+        }
+        recorder.await();
+        // the first was sent right away, the rest waited behind it and only the last of them went out
+        assertEquals(Arrays.asList("1=1", "1=1"), mVera.getActionLog());
+        assertEquals(3, mDispatcher.getMerged());
+        assertEquals(Arrays.asList("1 1", "1 1", "1 1", "1 1", "1 1"), recorder.sorted());
+    }
+
+    @Test
+    public void keepsTheOrderOfActionsOnTheSameDevice() throws InterruptedException {
+        Recorder recorder = new Recorder(2);
+        mDispatcher.dispatch(action(2, "1"), recorder);
+        mDispatcher.dispatch(action(2, "0"), recorder);
+        recorder.await();
+        assertEquals(Arrays.asList("2=1", "2=0"), mVera.getActionLog());
+        assertEquals(0, mDispatcher.getMerged());
+        assertEquals(0, mVera.getStatus(2));
+    }
+
+    @Test
+    public void runsDevicesConcurrentlyUpToTheLimit() throws InterruptedException {
+        int devices = 2 * PARALLELISM;
+        Recorder recorder = new Recorder(devices);
+        long start = System.nanoTime();
+        for (int id = 1; id <= devices; id++) {
+            mDispatcher.dispatch(action(id, "1"), recorder);
+        }
+        recorder.await();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(devices, mVera.getActionLog().size());
+        assertEquals(PARALLELISM, mVera.getMaxRunningActions());
+        // two rounds instead of one per device
+        assertTrue("Took " + elapsed + " ms", elapsed < devices * LATENCY);
+    }
+
+    @Test
+    public void failsEveryMergedListener() throws InterruptedException {
+        Recorder recorder = new Recorder(3);
+        // the controller has no such device and refuses the actions
+        mDispatcher.dispatch(action(99, "1"), recorder);
+        mDispatcher.dispatch(action(99, "0"), recorder);
+        mDispatcher.dispatch(action(99, "1"), recorder);
+        recorder.await();
+        assertEquals(Arrays.asList("99 failed", "99 failed", "99 failed"), recorder.sorted());
+        assertEquals(1, mDispatcher.getMerged());
+    }
+
+    @Test
+    public void failsActionsTheTransportRejects() throws InterruptedException {
+        mTransport.shutdown();
+        // more than can run at once, so the later ones only start if the rejected ones let go of their places
+        int devices = 2 * PARALLELISM;
+        Recorder recorder = new Recorder(devices);
+        for (int id = 1; id <= devices; id++) {
+            mDispatcher.dispatch(action(id, "1"), recorder);
+        }
+        recorder.await();
+        List<String> failed = new ArrayList<String>();
+        for (int id = 1; id <= devices; id++) {
+            failed.add(id + " failed");
+        }
+        Collections.sort(failed);
+        assertEquals(failed, recorder.sorted());
+        assertTrue(mVera.getActionLog().isEmpty());
+    }
+
+    private static ActionDispatcher.Action action(int id, String value) {
+        Device device = new Device(id, "лампа " + id, Device.Category.Switch);
+        return new ActionDispatcher.Action(device, SWITCH_POWER, "SetTarget", "newTargetValue", value);
+    }
+
+    private static class Recorder implements ActionDispatcher.Listener {
+
+        private final CountDownLatch mDone;
+        private final List<String> mEvents = Collections.synchronizedList(new ArrayList<String>());
+
+        Recorder(int count) {
+            mDone = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onComplete(ActionDispatcher.Action action) {
+            mEvents.add(action.device.id + " " + action.value);
+            mDone.countDown();
+        }
+
+        @Override
+        public void onFailure(ActionDispatcher.Action action, Exception e) {
+            mEvents.add(action.device.id + " failed");
+            mDone.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(mDone.await(10, TimeUnit.SECONDS));
+        }
+
+        List<String> sorted() {
+            List<String> events = new ArrayList<String>(mEvents);
+            Collections.sort(events);
+            return events;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.vera;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ControllerLocatorTest {
+
+    private static final String DETECT_HOST = "cp.mios.com";
+
+    private final Map<String, String> mRoutes = new HashMap<String, String>();
+    private FakeVera mFirst;
+    private FakeVera mSecond;
+    private HttpServer mDetector;
+    private HttpTransport mTransport;
+    private File mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mFirst = new FakeVera(5, 0, 0, 0);
+        mFirst.start();
+        mSecond = new FakeVera(5, 0, 0, 0);
+        mSecond.start();
+        mRoutes.put("10.0.0.1", mFirst.getBaseUrl());
+        mRoutes.put("10.0.0.2", mSecond.getBaseUrl());
+        // the detection service lists units by their addresses on the LAN
+        mDetector = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mDetector.createContext("/detect_unit.php", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = ("[{\"PK_Device\":\"1\",\"InternalIP\":\"10.0.0.1\",\"ExternalIP\":\"1.2.3.4\"},"
+                        + "{\"PK_Device\":\"1\",\"InternalIP\":\"10.0.0.1\"},"
+                        + "{\"PK_Device\":\"2\",\"InternalIP\":\"10.0.0.2\",\"Port\":3480}]").getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mDetector.start();
+        mTransport = new HttpTransport(4);
+        mCache = File.createTempFile("units", ".txt");
+    }
+
+    @After
+    public void tearDown() {
+        mTransport.shutdown();
+        mDetector.stop(0);
+        mFirst.stop();
+        mSecond.stop();
+        mCache.delete();
+    }
+
+    @Test
+    public void cachedAddress() throws Exception {
+        write("127.0.0.1");
+        ControllerLocator locator = new ControllerLocator(mCache, mTransport, mFirst.getPort());
+        long start = System.currentTimeMillis();
+        assertEquals("127.0.0.1", locator.locate());
+        // answered without a search
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(Url.parse(mFirst.getBaseUrl()), locator.getBaseUrl("127.0.0.1"));
+    }
+
+    @Test
+    public void cachedUnits() throws Exception {
+        write("10.0.0.1", "10.0.0.2");
+        ControllerLocator locator = new ControllerLocator(mCache, new RoutingTransport(mTransport, mRoutes));
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), locator.locateAll());
+    }
+
+    @Test
+    public void probe() throws Exception {
+        ControllerLocator locator = new ControllerLocator(null, new RoutingTransport(mTransport, mRoutes));
+        assertTrue(locator.probe("10.0.0.1"));
+        assertFalse(locator.probe("10.0.0.3"));
+    }
+
+    @Test
+    public void fallsBackToTheDetectionService() throws Exception {
+        // a unit that moved, and nothing on the LAN answers on the port
+        write("10.0.0.3");
+        mRoutes.put(DETECT_HOST, "http://127.0.0.1:" + mDetector.getAddress().getPort() + "/detect_unit.php");
+        ControllerLocator locator = new ControllerLocator(mCache, new RoutingTransport(mTransport, mRoutes), unusedPort());
+        List<String> expected = Arrays.asList("10.0.0.1", "10.0.0.2");
+        assertEquals(expected, locator.locateAll());
+        assertEquals(expected, read());
+    }
+
+    private void write(String... addresses) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mCache), "UTF-8");
+        try {
+            for (String address : addresses) {
+                writer.write(address + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<String> read() throws IOException {
+        List<String> addresses = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mCache), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addresses.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return addresses;
+    }
+
+    private static int unusedPort() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        int port = server.getAddress().getPort();
+        server.stop(0);
+        return port;
+    }
+}
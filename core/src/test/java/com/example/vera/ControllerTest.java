@@ -0,0 +1,127 @@
+package com.example.vera;
+
+import com.example.recognizer.Vocabulary;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ControllerTest {
+
+    private static final int UNITS = 3;
+    private static final int DEVICES = 30;
+    private static final int CONCURRENCY = 8;
+
+    private final String[][] mNames = new String[UNITS][];
+    private final FakeVera[] mVeras = new FakeVera[UNITS];
+    private File mCache;
+    private Controller mController;
+
+    @Before
+    public void setUp() throws IOException {
+        String[] names = Vocabulary.names(UNITS * DEVICES, 200, 3);
+        Map<String, String> routes = new HashMap<String, String>();
+        mCache = File.createTempFile("units", ".txt");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mCache), "UTF-8");
+        try {
+            for (int i = 0; i < UNITS; i++) {
+                mNames[i] = Arrays.copyOfRange(names, i * DEVICES, (i + 1) * DEVICES);
+                mVeras[i] = new FakeVera(mNames[i], 50, 0, 0);
+                mVeras[i].start();
+                String address = "10.0.0." + (i + 1);
+                routes.put(address, mVeras[i].getBaseUrl());
+                writer.write(address + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        mController = new Controller(new RoutingTransport(new HttpTransport(CONCURRENCY), routes), mCache);
+        assertTrue(mController.initialize());
+    }
+
+    @After
+    public void tearDown() {
+        mController.release();
+        for (FakeVera vera : mVeras) {
+            vera.stop();
+        }
+        mCache.delete();
+    }
+
+    @Test
+    public void loadsEveryUnit() {
+        List<Device> devices = mController.getDevices();
+        assertEquals(UNITS * DEVICES, devices.size());
+        for (Device device : devices) {
+            assertEquals(mNames[device.unit][device.id - 1], device.name);
+        }
+    }
+
+    @Test
+    public void resolvesNamesAcrossUnits() {
+        List<Device> devices = mController.getDevices(mNames[0][4] + " и " + mNames[2][7]);
+        assertEquals(2, devices.size());
+        List<String> found = new ArrayList<String>();
+        for (Device device : devices) {
+            found.add(device.unit + "/" + device.id);
+        }
+        assertTrue(found.toString(), found.contains("0/5"));
+        assertTrue(found.toString(), found.contains("2/8"));
+    }
+
+    @Test
+    public void actionsGoToTheUnitThatOwnsTheDevice() throws InterruptedException {
+        List<Device> switches = new ArrayList<Device>();
+        for (Device device : mController.getDevices()) {
+            if (device.category.field == null) switches.add(device);
+        }
+        final CountDownLatch done = new CountDownLatch(switches.size());
+        final AtomicInteger failures = new AtomicInteger();
+        for (Device device : switches) {
+            mController.process(device, new ActionDispatcher.Listener() {
+                @Override
+                public void onComplete(ActionDispatcher.Action action) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(ActionDispatcher.Action action, Exception e) {
+                    failures.incrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(20, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        int[] expected = new int[UNITS];
+        for (Device device : switches) {
+            expected[device.unit]++;
+            // devices start with status (id - 1) % 2 and are toggled
+            String action = device.id + "=" + (device.id % 2);
+            assertTrue(action + " on unit " + device.unit, mVeras[device.unit].getActionLog().contains(action));
+        }
+        int parallelism = (CONCURRENCY - UNITS) / UNITS;
+        for (int i = 0; i < UNITS; i++) {
+            assertEquals(expected[i], mVeras[i].getActionLog().size());
+            // the long polls keep their connections, actions don't take more than is left
+            assertTrue("Unit " + i + " ran " + mVeras[i].getMaxRunningActions(), mVeras[i].getMaxRunningActions() <= parallelism);
+        }
+    }
+}
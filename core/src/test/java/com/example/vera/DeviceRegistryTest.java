@@ -0,0 +1,128 @@
+package com.example.vera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceRegistryTest {
+
+    private static final int DEVICES = 20;
+
+    private final BlockingQueue<List<Device>> mChanges = new LinkedBlockingQueue<List<Device>>();
+    private FakeVera mVera;
+    private HttpTransport mTransport;
+    private DeviceRegistry mRegistry;
+
+    @Before
+    public void setUp() throws IOException {
+        mVera = new FakeVera(DEVICES, 0, 0, 0);
+        mVera.start();
+        mTransport = new HttpTransport(2);
+        mRegistry = new DeviceRegistry(Url.parse(mVera.getBaseUrl()), mTransport);
+        mRegistry.addListener(new DeviceRegistry.Listener() {
+            @Override
+            public void onDevicesChanged(DeviceTable table, List<Device> devices) {
+                mChanges.add(devices);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mRegistry.stop();
+        mTransport.shutdown();
+        mVera.stop();
+    }
+
+    @Test
+    public void loadsAllDevices() throws InterruptedException {
+        assertTrue(mRegistry.load());
+        assertEquals(DEVICES, mRegistry.getDevices().size());
+        assertEquals(1, mRegistry.getVersion());
+        assertEquals(1, mVera.getFullResponses());
+        DeviceTable table = mRegistry.getTable();
+        for (int id = 1; id <= DEVICES; id++) {
+            assertEquals(mVera.getStatus(id), table.getStatus(table.indexOf(id)));
+        }
+        assertEquals(DEVICES, mChanges.poll(1, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void appliesDeltas() throws InterruptedException {
+        assertTrue(mRegistry.load());
+        mChanges.clear();
+        mRegistry.start();
+        // the poll is held until something changes
+        Thread.sleep(200);
+        assertNull(mChanges.poll());
+        DeviceTable before = mRegistry.getTable();
+        mVera.setStatus(3, 1 - mVera.getStatus(3));
+        List<Device> changed = mChanges.poll(5, TimeUnit.SECONDS);
+        assertNotNull(changed);
+        assertEquals(1, changed.size());
+        assertEquals(3, changed.get(0).id);
+        DeviceTable table = mRegistry.getTable();
+        assertEquals(mVera.getStatus(3), table.getStatus(table.indexOf(3)));
+        assertEquals(DEVICES, table.size());
+        // the snapshot handed out before is left as it was
+        assertEquals(1 - mVera.getStatus(3), before.getStatus(before.indexOf(3)));
+        assertEquals(2, mRegistry.getVersion());
+        assertEquals(1, mVera.getFullResponses());
+    }
+
+    @Test
+    public void batchesChangesThatFollowShortly() throws InterruptedException {
+        assertTrue(mRegistry.load());
+        mChanges.clear();
+        mRegistry.start();
+        Thread.sleep(200);
+        mVera.setStatus(4, 1 - mVera.getStatus(4));
+        mVera.setStatus(5, 1 - mVera.getStatus(5));
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Device device : mChanges.poll(5, TimeUnit.SECONDS)) {
+            ids.add(device.id);
+        }
+        assertTrue(ids.toString(), ids.contains(4) && ids.contains(5));
+    }
+
+    @Test
+    public void reloadsAfterRestart() throws InterruptedException {
+        assertTrue(mRegistry.load());
+        mChanges.clear();
+        mRegistry.start();
+        Thread.sleep(200);
+        DeviceTable before = mRegistry.getTable();
+        mVera.restart();
+        List<Device> changed = mChanges.poll(5, TimeUnit.SECONDS);
+        assertNotNull(changed);
+        assertEquals(DEVICES, changed.size());
+        assertEquals(2, mVera.getFullResponses());
+        assertTrue(mRegistry.getTable() != before);
+        assertEquals(DEVICES, mRegistry.getTable().size());
+    }
+
+    @Test
+    public void stopEndsThePoll() throws InterruptedException {
+        assertTrue(mRegistry.load());
+        mRegistry.start();
+        Thread.sleep(200);
+        mRegistry.stop();
+        DeviceTable table = mRegistry.getTable();
+        mVera.setStatus(6, 1 - mVera.getStatus(6));
+        Thread.sleep(500);
+        assertSame(table, mRegistry.getTable());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.vera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceStateStoreTest {
+
+    private static final long SETTLE_TIME = 100;
+    private static final String SWITCH_POWER = "urn:upnp-org:serviceId:SwitchPower1";
+
+    private final Map<Integer, String> mCategories = new HashMap<Integer, String>();
+    private final List<String> mEvents = new ArrayList<String>();
+    private DeviceStateStore mStore;
+    private DeviceTable mTable;
+    private Device mDevice;
+
+    @Before
+    public void setUp() {
+        mCategories.put(3, "Switch");
+        mStore = new DeviceStateStore(SETTLE_TIME);
+        mStore.addListener(new DeviceStateStore.Listener() {
+            @Override
+            public void onDivergence(Device device, String expected, String reported) {
+                mEvents.add("diverged " + expected + " " + reported);
+            }
+
+            @Override
+            public void onRollback(Device device, String target, String state) {
+                mEvents.add("rolled back " + target + " " + state);
+            }
+        });
+        mTable = update(null, "0");
+        mDevice = mTable.getDevices().get(0);
+        mStore.reconcile(mTable, mTable.getDevices());
+    }
+
+    @Test
+    public void confirmedTarget() {
+        ActionDispatcher.Action action = toggle("1");
+        assertEquals("1", mStore.getStatus(mDevice));
+        mStore.onAccepted(action);
+        mTable = update(mTable, "1");
+        mStore.reconcile(mTable, mTable.getDevices());
+        assertFalse(mStore.isPending(mDevice));
+        assertEquals("1", mStore.getStatus(mDevice));
+        assertEquals(Collections.<String>emptyList(), mEvents);
+    }
+
+    @Test
+    public void failedAction() {
+        ActionDispatcher.Action action = toggle("1");
+        mStore.onFailed(action);
+        assertEquals("0", mStore.getStatus(mDevice));
+        assertEquals(Collections.singletonList("rolled back 1 0"), mEvents);
+    }
+
+    @Test
+    public void unconfirmedTargetExpires() throws InterruptedException {
+        ActionDispatcher.Action action = toggle("1");
+        mStore.onAccepted(action);
+        // an update from before the device switched, and none after it
+        mStore.reconcile(mTable, mTable.getDevices());
+        assertTrue(mStore.isPending(mDevice));
+        assertEquals("1", mStore.getStatus(mDevice));
+        Thread.sleep(SETTLE_TIME * 2);
+        assertEquals("0", mStore.getStatus(mDevice));
+        assertFalse(mStore.isPending(mDevice));
+        assertEquals(Collections.singletonList("diverged 1 0"), mEvents);
+    }
+
+    @Test
+    public void dispatchedTargetDoesNotExpire() throws InterruptedException {
+        toggle("1");
+        Thread.sleep(SETTLE_TIME * 2);
+        // not accepted yet, the request may still be on its way
+        assertEquals("1", mStore.getStatus(mDevice));
+        assertTrue(mEvents.isEmpty());
+    }
+
+    private ActionDispatcher.Action toggle(String value) {
+        ActionDispatcher.Action action = new ActionDispatcher.Action(mDevice, SWITCH_POWER, "SetTarget", "newTargetValue", value);
+        mStore.onDispatched(action);
+        return action;
+    }
+
+    private DeviceTable update(DeviceTable base, String status) {
+        Map<String, String> fields = new HashMap<String, String>();
+        // the builder compares field names by identity, the parser hands out these instances
+        fields.put(Device.field("id"), "7");
+        fields.put(Device.field("name"), "лампа");
+        fields.put(Device.field("category"), "3");
+        fields.put(Device.field("status"), status);
+        DeviceTable.Builder builder = new DeviceTable.Builder(0, base);
+        builder.put(fields, mCategories);
+        return builder.build();
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.vera;
+
+import com.example.recognizer.Vocabulary;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for a controller on the loopback interface, answering
+ * {@code alive}, {@code sdata} and {@code action} requests after a given
+ * latency, and failing a given share of the sdata and action requests
+ * with a server error.
+ *
+ * Actions change the status of their device and bump the data version.
+ * sdata answers in full without versions or with the load time of an
+ * earlier start, and otherwise with the devices changed since the data
+ * version given, holding the request up to its {@code timeout} until
+ * something changes and then for its {@code minimumdelay}, the way the
+ * controller does.
+ */
+public class FakeVera {
+
+    private static final long LOAD_TIME = 1412000000;
+    private static final long DATA_VERSION = 123456789;
+
+    private final int mDevices;
+    private final String[] mNames;
+    private volatile int mLatency;
+    private final int mJitter;
+    private final double mErrorRate;
+    private final AtomicInteger mActions = new AtomicInteger();
+    private final AtomicInteger mErrors = new AtomicInteger();
+    private final AtomicInteger mFull = new AtomicInteger();
+    private final AtomicInteger mDeltas = new AtomicInteger();
+    private final AtomicInteger mRunningActions = new AtomicInteger();
+    private final AtomicInteger mMaxRunningActions = new AtomicInteger();
+
+    // guarded by this
+    private final byte[] mStatuses;
+    private final long[] mChanged;
+    private final List<String> mActionLog = new ArrayList<String>();
+    private long mLoadTime = LOAD_TIME;
+    private long mDataVersion = DATA_VERSION;
+    private boolean mStopped;
+
+    private HttpServer mServer;
+    private ExecutorService mExecutor;
+
+    /**
+     * @param latency milliseconds every request takes
+     * @param jitter up to as many milliseconds more, at random
+     * @param errorRate share of requests that fail, from 0 to 1
+     */
+    public FakeVera(int devices, int latency, int jitter, double errorRate) {
+        this(names(devices), latency, jitter, errorRate);
+    }
+
+    /**
+     * Devices with the given names, their ids start from 1.
+     */
+    public FakeVera(String[] names, int latency, int jitter, double errorRate) {
+        int devices = names.length;
+        mDevices = devices;
+        mNames = names;
+        mLatency = latency;
+        mJitter = jitter;
+        mErrorRate = errorRate;
+        mStatuses = new byte[devices];
+        mChanged = new long[devices];
+        for (int i = 0; i < devices; i++) {
+            mStatuses[i] = (byte) (i % 2);
+        }
+    }
+
+    public void start() throws IOException {
+        // headers and body go out in separate writes, which Nagle's algorithm would hold for a delayed ack
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/data_request", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    public void stop() {
+        synchronized (this) {
+            mStopped = true;
+            notifyAll();
+        }
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort() + "/data_request";
+    }
+
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    public int getDevices() {
+        return mDevices;
+    }
+
+    public void setLatency(int latency) {
+        mLatency = latency;
+    }
+
+    /**
+     * Status of the device with the id, which starts from 1.
+     */
+    public synchronized int getStatus(int id) {
+        return mStatuses[id - 1];
+    }
+
+    /**
+     * Changes the status as if the device was switched by hand.
+     */
+    public synchronized void setStatus(int id, int status) {
+        mStatuses[id - 1] = (byte) status;
+        mChanged[id - 1] = ++mDataVersion;
+        notifyAll();
+    }
+
+    /**
+     * Starts over with a new load time, as after a reboot, so that every
+     * poll gets all devices again.
+     */
+    public synchronized void restart() {
+        mLoadTime++;
+        notifyAll();
+    }
+
+    /**
+     * Actions that were answered, including the failed ones.
+     */
+    public int getActions() {
+        return mActions.get();
+    }
+
+    /**
+     * Most actions that were being answered at once.
+     */
+    public int getMaxRunningActions() {
+        return mMaxRunningActions.get();
+    }
+
+    /**
+     * Successful actions in the order they were applied, as id=value.
+     */
+    public synchronized List<String> getActionLog() {
+        return new ArrayList<String>(mActionLog);
+    }
+
+    public int getErrors() {
+        return mErrors.get();
+    }
+
+    /**
+     * sdata responses with all devices.
+     */
+    public int getFullResponses() {
+        return mFull.get();
+    }
+
+    /**
+     * sdata responses with only the changes.
+     */
+    public int getDeltaResponses() {
+        return mDeltas.get();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        try {
+            String query = exchange.getRequestURI().getRawQuery();
+            String id = parameter(query, "id");
+            if ("action".equals(id)) {
+                int running = mRunningActions.incrementAndGet();
+                int max;
+                while (running > (max = mMaxRunningActions.get()) && !mMaxRunningActions.compareAndSet(max, running)) {
+                    // retry
+                }
+            }
+            Random random = new Random();
+            int delay = mLatency + (mJitter > 0 ? random.nextInt(mJitter + 1) : 0);
+            try {
+                if (delay > 0) Thread.sleep(delay);
+            } finally {
+                // the client may start the next request as soon as the answer is out
+                if ("action".equals(id)) mRunningActions.decrementAndGet();
+            }
+            if ("action".equals(id)) mActions.incrementAndGet();
+            if (!"alive".equals(id) && random.nextDouble() < mErrorRate) {
+                mErrors.incrementAndGet();
+                send(exchange, 500, "Error".getBytes("UTF-8"));
+            } else if ("sdata".equals(id)) {
+                send(exchange, 200, sdata(query));
+            } else if ("action".equals(id)) {
+                send(exchange, action(query) ? 200 : 400, "OK".getBytes("UTF-8"));
+            } else if ("alive".equals(id)) {
+                send(exchange, 200, "OK".getBytes("UTF-8"));
+            } else {
+                send(exchange, 404, "No handler".getBytes("UTF-8"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean action(String query) {
+        int device = Integer.parseInt(parameter(query, "DeviceNum"));
+        String value = parameter(query, "newTargetValue");
+        if (device < 1 || device > mDevices || value == null) return false;
+        synchronized (this) {
+            mActionLog.add(device + "=" + value);
+            mStatuses[device - 1] = Byte.parseByte(value);
+            mChanged[device - 1] = ++mDataVersion;
+            notifyAll();
+        }
+        return true;
+    }
+
+    private byte[] sdata(String query) throws InterruptedException, UnsupportedEncodingException {
+        String loadTime = parameter(query, "loadtime");
+        String dataVersion = parameter(query, "dataversion");
+        long requested = loadTime != null && dataVersion != null ? Long.parseLong(loadTime) : -1;
+        long since = dataVersion != null ? Long.parseLong(dataVersion) : -1;
+        String timeout = parameter(query, "timeout");
+        String minimumDelay = parameter(query, "minimumdelay");
+        long deadline = System.currentTimeMillis() + (timeout != null ? Long.parseLong(timeout) * 1000 : 0);
+        boolean changed;
+        synchronized (this) {
+            long wait;
+            while (requested == mLoadTime && mDataVersion <= since && !mStopped && (wait = deadline - System.currentTimeMillis()) > 0) {
+                wait(wait);
+            }
+            // versions of an earlier start mean nothing now
+            if (requested != mLoadTime) {
+                mFull.incrementAndGet();
+                return full(mNames, mStatuses, mLoadTime, mDataVersion);
+            }
+            changed = mDataVersion > since;
+        }
+        // changes that follow shortly go out in the same response
+        if (changed && minimumDelay != null) Thread.sleep(Long.parseLong(minimumDelay));
+        mDeltas.incrementAndGet();
+        StringBuilder sb = new StringBuilder();
+        synchronized (this) {
+            sb.append("{\"full\":0,\"loadtime\":").append(mLoadTime).append(",\"dataversion\":").append(mDataVersion);
+            sb.append(",\"devices\":[");
+            boolean first = true;
+            for (int i = 0; i < mDevices; i++) {
+                if (mChanged[i] <= since) continue;
+                if (!first) sb.append(',');
+                first = false;
+                sb.append("{\"id\":").append(i + 1).append(",\"status\":\"").append(mStatuses[i]).append("\",\"state\":4,\"comment\":\"\"}");
+            }
+        }
+        sb.append("]}");
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static String parameter(String query, String name) {
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0 && pair.substring(0, index).equals(name)) return pair.substring(index + 1);
+        }
+        return null;
+    }
+
+    /**
+     * A full sdata response shaped like the controller's, with the rooms,
+     * scenes and device fields it has that the parser skips.
+     */
+    static byte[] sdata(int devices) throws UnsupportedEncodingException {
+        byte[] statuses = new byte[devices];
+        for (int i = 0; i < devices; i++) {
+            statuses[i] = (byte) (i % 2);
+        }
+        return full(names(devices), statuses, LOAD_TIME, DATA_VERSION);
+    }
+
+    private static byte[] full(String[] names, byte[] statuses, long loadTime, long dataVersion) throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"full\":1,\"version\":\"*1.5.622*\",\"model\":\"MiCasaVerde VeraLite\",\"temperature\":\"C\",");
+        sb.append("\"categories\":[{\"name\":\"Dimmer\",\"id\":2},{\"name\":\"Switch\",\"id\":3},{\"name\":\"Thermostat\",\"id\":5}],");
+        sb.append("\"rooms\":[{\"name\":\"Кухня\",\"id\":1,\"section\":1}],");
+        sb.append("\"scenes\":[{\"name\":\"Все выключить\",\"id\":1,\"room\":0,\"active\":0}],");
+        sb.append("\"devices\":[");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) sb.append(',');
+            int category = i % 3 == 0 ? 2 : i % 3 == 1 ? 3 : 5;
+            sb.append("{\"name\":\"").append(names[i]).append("\",\"altid\":\"").append(i)
+                    .append("\",\"id\":").append(i + 1).append(",\"category\":").append(category)
+                    .append(",\"subcategory\":0,\"room\":1,\"parent\":1,\"status\":\"").append(statuses[i])
+                    .append("\",\"level\":\"").append(i % 100).append("\",\"temperature\":\"21.5\"")
+                    .append(",\"state\":-1,\"comment\":\"\",\"watts\":\"0\"}");
+        }
+        sb.append("],\"ir\":0,\"irtx\":\"\",\"loadtime\":").append(loadTime).append(",\"dataversion\":").append(dataVersion)
+                .append(",\"state\":-1,\"comment\":\"\"}");
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Names of the devices in {@link #sdata(int)}.
+     */
+    static String[] names(int devices) {
+        return Vocabulary.names(devices, Math.max(100, devices / 2), 1);
+    }
+}
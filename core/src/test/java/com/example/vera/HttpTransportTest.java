@@ -0,0 +1,150 @@
+package com.example.vera;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpTransportTest {
+
+    private static final int CONCURRENCY = 4;
+    private static final int REQUESTS = 400;
+    private static final int LATENCY = 20;
+
+    private FakeVera mVera;
+    private HttpTransport mTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        mVera = new FakeVera(100, LATENCY, 10, 0.1);
+        mVera.start();
+        mTransport = new HttpTransport(CONCURRENCY);
+    }
+
+    @After
+    public void tearDown() {
+        mTransport.shutdown();
+        mVera.stop();
+    }
+
+    @Test
+    public void loadCompletesEveryRequestOnceWithinThePool() throws Exception {
+        final AtomicInteger refused = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger[] completions = new AtomicInteger[REQUESTS];
+        List<Future<String>> futures = new ArrayList<Future<String>>(REQUESTS);
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            final AtomicInteger completion = completions[i] = new AtomicInteger();
+            Url url = Url.parse(mVera.getBaseUrl()).buildUpon().appendQueryParameter("id", "action")
+                    .appendQueryParameter("DeviceNum", String.valueOf(1 + i % 100))
+                    .appendQueryParameter("newTargetValue", String.valueOf(i % 2)).build();
+            futures.add(mTransport.get(url, 3000, 10000, Transport.TEXT, new Transport.Callback<String>() {
+                @Override
+                public void onResponse(String body) {
+                    if (body == null) refused.incrementAndGet();
+                    completion.incrementAndGet();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    failed.incrementAndGet();
+                    completion.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<String> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        for (AtomicInteger completion : completions) {
+            assertEquals(1, completion.get());
+        }
+        assertEquals(0, failed.get());
+        // server errors are answers too, the body is just null
+        assertEquals(mVera.getErrors(), refused.get());
+        assertEquals(REQUESTS, mVera.getActions());
+        assertEquals(REQUESTS, mTransport.getLatency("action").getCount());
+        assertTrue("Ran " + mVera.getMaxRunningActions() + " at once", mVera.getMaxRunningActions() <= CONCURRENCY);
+        // one request after another would take REQUESTS * LATENCY
+        assertTrue("Took " + elapsed + " ms", elapsed < REQUESTS * LATENCY / 2);
+    }
+
+    @Test
+    public void throwingCallbackDoesNotFailTheRequest() throws Exception {
+        final RuntimeException thrown = new RuntimeException();
+        final AtomicInteger responses = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        mVera.setLatency(0);
+        Url url = Url.parse(mVera.getBaseUrl()).buildUpon().appendQueryParameter("id", "alive").build();
+        Future<String> future = mTransport.get(url, 3000, 3000, Transport.TEXT, new Transport.Callback<String>() {
+            @Override
+            public void onResponse(String body) {
+                responses.incrementAndGet();
+                throw thrown;
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failures.incrementAndGet();
+            }
+        });
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(thrown, e.getCause());
+        }
+        assertEquals(1, responses.get());
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void responseWithoutBody() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            final AtomicInteger failures = new AtomicInteger();
+            Url url = Url.parse("http://127.0.0.1:" + server.getAddress().getPort() + "/data_request?id=action");
+            Future<String> future = mTransport.get(url, 3000, 3000, Transport.TEXT, new Transport.Callback<String>() {
+                @Override
+                public void onResponse(String body) {
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+            assertNull(future.get(10, TimeUnit.SECONDS));
+            assertEquals(0, failures.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.vera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class NameMatcherTest {
+
+    @Test
+    public void longestNameAtTheSameStart() {
+        NameMatcher matcher = matcher("свет", "свет в кухне");
+        assertEquals(Arrays.asList(2), ids(matcher.match("включи свет в кухне")));
+        assertEquals(Arrays.asList(1), ids(matcher.match("включи свет в ванной")));
+    }
+
+    @Test
+    public void leftmostWinsOnOverlap() {
+        NameMatcher matcher = matcher("xy", "yzw");
+        assertEquals(Arrays.asList(1), ids(matcher.match("xyzw")));
+        assertEquals(Arrays.asList(2), ids(matcher.match("yzw")));
+    }
+
+    @Test
+    public void nameInsideALongerOne() {
+        NameMatcher matcher = matcher("лампа", "настольная лампа");
+        assertEquals(Arrays.asList(2), ids(matcher.match("выключи настольная лампа")));
+        assertEquals(Arrays.asList(1, 2), ids(matcher.match("лампа и настольная лампа")));
+    }
+
+    @Test
+    public void devicesInTheOrderTheyAreNamed() {
+        NameMatcher matcher = matcher("торшер", "люстра", "бра");
+        assertEquals(Arrays.asList(3, 1, 2), ids(matcher.match("бра торшер и люстра")));
+    }
+
+    @Test
+    public void duplicateNamesResolveToTheFirstDevice() {
+        NameMatcher matcher = matcher("лампа", "лампа", "торшер");
+        assertEquals(Arrays.asList(1), ids(matcher.match("лампа")));
+    }
+
+    @Test
+    public void repeatedMentionsAreReturnedOnce() {
+        NameMatcher matcher = matcher("лампа", "торшер");
+        assertEquals(Arrays.asList(1, 2), ids(matcher.match("лампа торшер и снова лампа")));
+    }
+
+    @Test
+    public void noMatch() {
+        NameMatcher matcher = matcher("лампа", "торшер");
+        assertEquals(Collections.<Integer>emptyList(), ids(matcher.match("включи телевизор")));
+        assertEquals(Collections.<Integer>emptyList(), ids(matcher.match("")));
+        assertEquals(Collections.<Integer>emptyList(), ids(matcher("").match("лампа")));
+        assertEquals(Collections.<Integer>emptyList(), ids(new NameMatcher(Collections.<Device>emptyList(), 0).match("лампа")));
+    }
+
+    @Test
+    public void keepsTheVersion() {
+        assertEquals(7, new NameMatcher(Collections.<Device>emptyList(), 7).getVersion());
+    }
+
+    /**
+     * Devices get ids from 1 in the order of the names.
+     */
+    private static NameMatcher matcher(String... names) {
+        List<Device> devices = new ArrayList<Device>();
+        for (int i = 0; i < names.length; i++) {
+            devices.add(new Device(i + 1, names[i], Device.Category.Switch));
+        }
+        return new NameMatcher(devices, 1);
+    }
+
+    private static List<Integer> ids(List<Device> devices) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Device device : devices) {
+            ids.add(device.id);
+        }
+        return ids;
+    }
+}
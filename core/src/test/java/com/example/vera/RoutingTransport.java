@@ -0,0 +1,48 @@
+package com.example.vera;
+
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Sends requests for made-up hosts to the stand-ins serving them, hosts
+ * without one get a refused connection.
+ */
+public class RoutingTransport implements Transport {
+
+    private static final String NOWHERE = "http://127.0.0.1:1/data_request";
+
+    private final Transport mTransport;
+    private final Map<String, String> mRoutes;
+
+    /**
+     * @param routes base URLs of the stand-ins by host
+     */
+    public RoutingTransport(Transport transport, Map<String, String> routes) {
+        mTransport = transport;
+        mRoutes = routes;
+    }
+
+    @Override
+    public <T> Future<T> get(Url url, int connectTimeout, int readTimeout, Parser<T> parser, Callback<T> callback) {
+        String base = mRoutes.get(url.getHost());
+        String s = url.toString();
+        int query = s.indexOf('?');
+        Url routed = Url.parse((base != null ? base : NOWHERE) + (query >= 0 ? s.substring(query) : ""));
+        return mTransport.get(routed, connectTimeout, readTimeout, parser, callback);
+    }
+
+    @Override
+    public LatencyHistogram getLatency(String type) {
+        return mTransport.getLatency(type);
+    }
+
+    @Override
+    public int getConcurrency() {
+        return mTransport.getConcurrency();
+    }
+
+    @Override
+    public void shutdown() {
+        mTransport.shutdown();
+    }
+}